@@ -0,0 +1,47 @@
+package priv.zujool.crypto;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有上限的无锁对象池，用于复用Cipher/MessageDigest/Mac等非线程安全的实例
+ * 池空时由调用方新建，超过上限的实例直接丢弃
+ *
+ * @author zujool
+ **/
+final class BoundedPool<T> {
+
+    static final int DEFAULT_MAX = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final Queue<T> items = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int max;
+
+    BoundedPool() {
+        this(DEFAULT_MAX);
+    }
+
+    BoundedPool(int max) {
+        this.max = max;
+    }
+
+    T poll() {
+        T item = items.poll();
+        if (null != item) {
+            size.decrementAndGet();
+        }
+        return item;
+    }
+
+    void offer(T item) {
+        if (size.incrementAndGet() <= max) {
+            items.offer(item);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+package priv.zujool.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+/**
+ * 预先准备好的加解密引擎，通过CryptoUtils.prepare获取
+ * 密钥只派生一次，Cipher实例初始化后放回池中复用，doFinal结束后Cipher回到初始化时的状态，可直接用于下一次调用
+ * 线程安全；不使用ThreadLocal，在虚拟线程下同样只会保留少量Cipher
+ * <p>
+ * GCM/CTR模式每次加密生成随机iv并写在密文最前面，解密时从密文头部读取，同一密钥下不会重复使用iv
+ *
+ * @author zujool
+ **/
+public class CipherEngine {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int GCM_TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String transformation;
+
+    private final Key key;
+
+    private final AlgorithmParameterSpec params;
+
+    /**
+     * 每次操作随机生成的iv长度，0表示使用固定参数
+     */
+    private final int ivLength;
+
+    private final BoundedPool<Cipher> encryptors = new BoundedPool<>();
+
+    private final BoundedPool<Cipher> decryptors = new BoundedPool<>();
+
+    CipherEngine(String transformation, Key key, AlgorithmParameterSpec params) {
+        this(transformation, key, params, 0);
+    }
+
+    CipherEngine(String transformation, Key key, AlgorithmParameterSpec params, int ivLength) {
+        this.transformation = transformation;
+        this.key = key;
+        this.params = params;
+        this.ivLength = ivLength;
+    }
+
+    public byte[] encrypt(byte[] source) {
+        return crypt(source, Cipher.ENCRYPT_MODE);
+    }
+
+    public byte[] decrypt(byte[] source) {
+        return crypt(source, Cipher.DECRYPT_MODE);
+    }
+
+    /**
+     * @param source     数据
+     * @param cipherMode Cipher.ENCRYPT_MODE或Cipher.DECRYPT_MODE
+     * @return 结果
+     */
+    public byte[] crypt(byte[] source, int cipherMode) {
+        if (ivLength > 0) {
+            ByteBuffer output = ByteBuffer.allocate(outputSize(source.length, cipherMode));
+            crypt(ByteBuffer.wrap(source), output, cipherMode);
+            return output.position() == output.capacity() ? output.array() : Arrays.copyOf(output.array(), output.position());
+        }
+        Cipher cipher = borrow(cipherMode, null);
+        byte[] result;
+        try {
+            result = cipher.doFinal(source);
+        } catch (GeneralSecurityException e) {
+            // 异常后Cipher的状态不确定，不再放回池中
+            throw new RuntimeException(e);
+        }
+        release(cipher, cipherMode);
+        return result;
+    }
+
+    /**
+     * 一次性处理input中剩余的全部数据写入output，input被读完，output的position后移
+     * 两者可以是direct buffer，不经过堆上数组
+     *
+     * @param input      输入
+     * @param output     输出，剩余空间不足时抛出异常
+     * @param cipherMode Cipher.ENCRYPT_MODE或Cipher.DECRYPT_MODE
+     * @return 写入output的字节数
+     */
+    public int crypt(ByteBuffer input, ByteBuffer output, int cipherMode) {
+        int start = output.position();
+        byte[] iv = null;
+        if (ivLength > 0) {
+            iv = new byte[ivLength];
+            if (Cipher.ENCRYPT_MODE == cipherMode) {
+                RANDOM.nextBytes(iv);
+                if (output.remaining() < ivLength) {
+                    throw new IllegalArgumentException("output buffer too small");
+                }
+                output.put(iv);
+            } else {
+                if (input.remaining() < ivLength) {
+                    throw new IllegalArgumentException("input shorter than iv");
+                }
+                input.get(iv);
+            }
+        }
+        Cipher cipher = borrow(cipherMode, iv);
+        try {
+            cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        release(cipher, cipherMode);
+        return output.position() - start;
+    }
+
+    /**
+     * 原地加解密buffer中position到limit的数据，完成后position不变，limit指向结果末尾
+     * 填充模式加密时结果比原文最多长一个分组，需要limit之后预留空间
+     * GCM/CTR模式加密需要在头部写入iv，不支持原地加密，解密支持
+     *
+     * @param buffer     数据
+     * @param cipherMode Cipher.ENCRYPT_MODE或Cipher.DECRYPT_MODE
+     */
+    public void cryptInPlace(ByteBuffer buffer, int cipherMode) {
+        if (ivLength > 0 && Cipher.ENCRYPT_MODE == cipherMode) {
+            throw new UnsupportedOperationException(transformation + " can not encrypt in place");
+        }
+        int start = buffer.position();
+        ByteBuffer output = buffer.duplicate();
+        output.limit(output.capacity());
+        byte[] iv = null;
+        if (ivLength > 0) {
+            if (buffer.remaining() < ivLength) {
+                throw new IllegalArgumentException("input shorter than iv");
+            }
+            iv = new byte[ivLength];
+            buffer.get(iv);
+        }
+        Cipher cipher = borrow(cipherMode, iv);
+        if (cipher.getOutputSize(buffer.remaining()) > output.remaining()) {
+            release(cipher, cipherMode);
+            throw new IllegalArgumentException("buffer has no room for the result");
+        }
+        try {
+            cipher.doFinal(buffer, output);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        release(cipher, cipherMode);
+        buffer.limit(output.position());
+        buffer.position(start);
+    }
+
+    public long encrypt(InputStream in, OutputStream out) throws IOException {
+        return crypt(in, out, Cipher.ENCRYPT_MODE);
+    }
+
+    public long decrypt(InputStream in, OutputStream out) throws IOException {
+        return crypt(in, out, Cipher.DECRYPT_MODE);
+    }
+
+    /**
+     * 流式加解密，读到in结束为止，不关闭in和out
+     * 注意JDK的GCM实现在解密时会缓存全部密文直到校验tag，大文件解密内存占用与文件大小相当，CTR没有此限制
+     *
+     * @param in         输入
+     * @param out        输出
+     * @param cipherMode Cipher.ENCRYPT_MODE或Cipher.DECRYPT_MODE
+     * @return 写入out的字节数
+     */
+    public long crypt(InputStream in, OutputStream out, int cipherMode) throws IOException {
+        long written = 0;
+        byte[] iv = null;
+        if (ivLength > 0) {
+            iv = new byte[ivLength];
+            if (Cipher.ENCRYPT_MODE == cipherMode) {
+                RANDOM.nextBytes(iv);
+                out.write(iv);
+                written += ivLength;
+            } else {
+                readFully(in, iv);
+            }
+        }
+        Cipher cipher = borrow(cipherMode, iv);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] outBuffer = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                int size = cipher.getOutputSize(n);
+                if (size > outBuffer.length) {
+                    outBuffer = new byte[size];
+                }
+                int len = cipher.update(buffer, 0, n, outBuffer);
+                out.write(outBuffer, 0, len);
+                written += len;
+            }
+            int size = cipher.getOutputSize(0);
+            if (size > outBuffer.length) {
+                outBuffer = new byte[size];
+            }
+            int len = cipher.doFinal(outBuffer, 0);
+            out.write(outBuffer, 0, len);
+            written += len;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        release(cipher, cipherMode);
+        return written;
+    }
+
+    /**
+     * 基于channel的流式加解密，使用direct buffer，适合FileChannel之间的大文件处理，不关闭channel
+     *
+     * @param in         输入
+     * @param out        输出
+     * @param cipherMode Cipher.ENCRYPT_MODE或Cipher.DECRYPT_MODE
+     * @return 写入out的字节数
+     */
+    public long crypt(ReadableByteChannel in, WritableByteChannel out, int cipherMode) throws IOException {
+        long written = 0;
+        byte[] iv = null;
+        if (ivLength > 0) {
+            iv = new byte[ivLength];
+            if (Cipher.ENCRYPT_MODE == cipherMode) {
+                RANDOM.nextBytes(iv);
+                written += writeFully(out, ByteBuffer.wrap(iv));
+            } else {
+                ByteBuffer ivBuffer = ByteBuffer.wrap(iv);
+                while (ivBuffer.hasRemaining()) {
+                    if (in.read(ivBuffer) < 0) {
+                        throw new EOFException("input shorter than iv");
+                    }
+                }
+            }
+        }
+        Cipher cipher = borrow(cipherMode, iv);
+        ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer output = ByteBuffer.allocateDirect(cipher.getOutputSize(BUFFER_SIZE));
+        try {
+            while (in.read(input) >= 0) {
+                input.flip();
+                output = ensureCapacity(output, cipher.getOutputSize(input.remaining()));
+                cipher.update(input, output);
+                output.flip();
+                written += writeFully(out, output);
+                output.clear();
+                input.clear();
+            }
+            input.flip();
+            output = ensureCapacity(output, cipher.getOutputSize(0));
+            cipher.doFinal(input, output);
+            output.flip();
+            written += writeFully(out, output);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        release(cipher, cipherMode);
+        return written;
+    }
+
+    /**
+     * 给定输入长度时结果的最大长度，GCM/CTR包含iv
+     */
+    public int outputSize(int inputLength, int cipherMode) {
+        if (ivLength > 0) {
+            int tagLength = isGcm() ? GCM_TAG_BITS / 8 : 0;
+            return Cipher.ENCRYPT_MODE == cipherMode
+                    ? ivLength + inputLength + tagLength
+                    : Math.max(0, inputLength - ivLength - tagLength);
+        }
+        Cipher cipher = borrow(cipherMode, null);
+        int size = cipher.getOutputSize(inputLength);
+        release(cipher, cipherMode);
+        return size;
+    }
+
+    public String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * 取出一个已按cipherMode初始化的Cipher，用完后必须release或直接丢弃
+     * iv不为null时每次都用新的iv重新初始化
+     */
+    Cipher borrow(int cipherMode, byte[] iv) {
+        Cipher cipher = pool(cipherMode).poll();
+        try {
+            if (null == cipher) {
+                cipher = Cipher.getInstance(transformation);
+            } else if (null == iv) {
+                return cipher;
+            }
+            if (null != iv) {
+                cipher.init(cipherMode, key, ivSpec(iv));
+            } else if (null == params) {
+                cipher.init(cipherMode, key);
+            } else {
+                cipher.init(cipherMode, key, params);
+            }
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void release(Cipher cipher, int cipherMode) {
+        pool(cipherMode).offer(cipher);
+    }
+
+    private AlgorithmParameterSpec ivSpec(byte[] iv) {
+        if (isGcm()) {
+            return new GCMParameterSpec(GCM_TAG_BITS, iv);
+        }
+        return new IvParameterSpec(iv);
+    }
+
+    private boolean isGcm() {
+        return transformation.contains("/GCM/");
+    }
+
+    private BoundedPool<Cipher> pool(int cipherMode) {
+        if (Cipher.ENCRYPT_MODE == cipherMode) {
+            return encryptors;
+        }
+        if (Cipher.DECRYPT_MODE == cipherMode) {
+            return decryptors;
+        }
+        throw new IllegalArgumentException("unsupported cipher mode: " + cipherMode);
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+        return buffer.capacity() >= size ? buffer : ByteBuffer.allocateDirect(size);
+    }
+
+    private static int writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return n;
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException("input shorter than iv");
+            }
+            read += n;
+        }
+    }
+
+}
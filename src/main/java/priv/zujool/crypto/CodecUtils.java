@@ -0,0 +1,269 @@
+package priv.zujool.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * hex与Base64编解码
+ * hex使用查表编解码，可直接写入调用方提供的char[]/byte[]/ByteBuffer，不产生中间对象
+ * 解码时校验长度与字符，大小写均可，非法输入抛出IllegalArgumentException
+ *
+ * @author zujool
+ **/
+public class CodecUtils {
+
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * 字符到半字节的映射，非hex字符为-1
+     */
+    private static final byte[] HEX_DECODE = new byte[128];
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    static {
+        Arrays.fill(HEX_DECODE, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_DECODE[HEX_LOWER[i]] = (byte) i;
+            HEX_DECODE[HEX_UPPER[i]] = (byte) i;
+        }
+    }
+
+    private CodecUtils() {
+    }
+
+    public static String encodeHex(byte[] bytes) {
+        return encodeHex(bytes, false);
+    }
+
+    public static String encodeHex(byte[] bytes, boolean upperCase) {
+        char[] chars = new char[bytes.length << 1];
+        encodeHex(bytes, 0, bytes.length, chars, 0, upperCase);
+        return new String(chars);
+    }
+
+    /**
+     * 编码到char数组
+     *
+     * @return 写入的字符数
+     */
+    public static int encodeHex(byte[] src, int srcOffset, int length, char[] dst, int dstOffset, boolean upperCase) {
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        for (int i = srcOffset, j = dstOffset, end = srcOffset + length; i < end; i++) {
+            int b = src[i];
+            dst[j++] = table[(b >>> 4) & 0xf];
+            dst[j++] = table[b & 0xf];
+        }
+        return length << 1;
+    }
+
+    /**
+     * 编码为ASCII字节写入byte数组
+     *
+     * @return 写入的字节数
+     */
+    public static int encodeHex(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, boolean upperCase) {
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        for (int i = srcOffset, j = dstOffset, end = srcOffset + length; i < end; i++) {
+            int b = src[i];
+            dst[j++] = (byte) table[(b >>> 4) & 0xf];
+            dst[j++] = (byte) table[b & 0xf];
+        }
+        return length << 1;
+    }
+
+    /**
+     * 编码src中剩余的全部字节，以ASCII写入dst，dst剩余空间需不少于src剩余字节数的两倍
+     *
+     * @return 写入的字节数
+     */
+    public static int encodeHex(ByteBuffer src, ByteBuffer dst, boolean upperCase) {
+        int length = src.remaining();
+        if (dst.remaining() < length << 1) {
+            throw new IllegalArgumentException("destination buffer too small");
+        }
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        while (src.hasRemaining()) {
+            int b = src.get();
+            dst.put((byte) table[(b >>> 4) & 0xf]);
+            dst.put((byte) table[b & 0xf]);
+        }
+        return length << 1;
+    }
+
+    public static byte[] decodeHex(CharSequence hex) {
+        if ((hex.length() & 1) != 0) {
+            throw new IllegalArgumentException("hex length must be even: " + hex.length());
+        }
+        byte[] bytes = new byte[hex.length() >> 1];
+        decodeHex(hex, 0, hex.length(), bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * 解码到byte数组
+     *
+     * @return 写入的字节数
+     */
+    public static int decodeHex(CharSequence hex, int offset, int length, byte[] dst, int dstOffset) {
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("hex length must be even: " + length);
+        }
+        for (int i = offset, j = dstOffset, end = offset + length; i < end; i += 2) {
+            dst[j++] = (byte) (nibble(hex.charAt(i), i) << 4 | nibble(hex.charAt(i + 1), i + 1));
+        }
+        return length >> 1;
+    }
+
+    /**
+     * 解码src中剩余的ASCII hex字节写入dst
+     *
+     * @return 写入的字节数
+     */
+    public static int decodeHex(ByteBuffer src, ByteBuffer dst) {
+        int length = src.remaining();
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("hex length must be even: " + length);
+        }
+        if (dst.remaining() < length >> 1) {
+            throw new IllegalArgumentException("destination buffer too small");
+        }
+        while (src.hasRemaining()) {
+            int index = src.position();
+            dst.put((byte) (nibble((char) (src.get() & 0xff), index) << 4 | nibble((char) (src.get() & 0xff), index + 1)));
+        }
+        return length >> 1;
+    }
+
+    /**
+     * 将in中的数据编码为hex写入out，不关闭channel
+     *
+     * @return 写入的字节数
+     */
+    public static long encodeHex(ReadableByteChannel in, WritableByteChannel out, boolean upperCase) throws IOException {
+        ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE << 1);
+        long written = 0;
+        while (in.read(input) >= 0) {
+            input.flip();
+            encodeHex(input, output, upperCase);
+            output.flip();
+            written += writeFully(out, output);
+            output.clear();
+            input.clear();
+        }
+        return written;
+    }
+
+    /**
+     * 将in中的hex数据解码后写入out，不关闭channel
+     *
+     * @return 写入的字节数
+     */
+    public static long decodeHex(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE >> 1);
+        long written = 0;
+        boolean eof = false;
+        while (!eof) {
+            eof = in.read(input) < 0;
+            input.flip();
+            // 读到奇数个字符时保留最后一个，与下一次读取的字符拼成一个字节
+            int limit = input.limit();
+            if (!eof && (input.remaining() & 1) != 0) {
+                input.limit(limit - 1);
+            }
+            decodeHex(input, output);
+            input.limit(limit);
+            input.compact();
+            output.flip();
+            written += writeFully(out, output);
+            output.clear();
+        }
+        return written;
+    }
+
+    /**
+     * 将in中的数据编码为Base64写入out，不关闭channel
+     *
+     * @return 读取的字节数
+     */
+    public static long encodeBase64(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        OutputStream encoder = Base64.getEncoder().wrap(new UnclosedOutputStream(Channels.newOutputStream(out)));
+        long read = copy(Channels.newInputStream(in), encoder);
+        // 关闭encoder以写出末尾的填充，不会关闭out
+        encoder.close();
+        return read;
+    }
+
+    /**
+     * 将in中的Base64数据解码后写入out，不关闭channel
+     *
+     * @return 写入的字节数
+     */
+    public static long decodeBase64(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        InputStream decoder = Base64.getDecoder().wrap(Channels.newInputStream(in));
+        return copy(decoder, Channels.newOutputStream(out));
+    }
+
+    private static int nibble(char c, int index) {
+        int n = c < 128 ? HEX_DECODE[c] : -1;
+        if (n < 0) {
+            throw new IllegalArgumentException("illegal hex character '" + c + "' at index " + index);
+        }
+        return n;
+    }
+
+    private static int writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return n;
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    private static class UnclosedOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        UnclosedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+}
@@ -1,29 +1,52 @@
 package priv.zujool.crypto;
 
 import lombok.SneakyThrows;
+import lombok.Value;
 
 import javax.crypto.*;
 import javax.crypto.spec.DESKeySpec;
 import javax.crypto.spec.DESedeKeySpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 
 public class CryptoUtils {
 
-    private static final String HEX_SEQUENCE = "0123456789abcdef";
-
     private final static String KEY_ENCODING = "UTF-8";
-    private final static String WORK_MODE_CBC = "CBC";
-    private final static String WORK_MODE_ECB = "ECB";
+    public final static String WORK_MODE_CBC = "CBC";
+    public final static String WORK_MODE_ECB = "ECB";
+    public final static String WORK_MODE_GCM = "GCM";
+    public final static String WORK_MODE_CTR = "CTR";
+
+    public final static String ALG_DESEDE = "DESede";
+    public final static String ALG_DES = "DES";
+    public final static String ALG_AES = "AES";
+
+    /**
+     * 缓存的引擎数上限，超过后淘汰最久未使用的引擎
+     */
+    private static final int MAX_CACHED_ENGINES = 1024;
+
+    private static final LruCache<EngineKey, CipherEngine> ENGINES = new LruCache<>(MAX_CACHED_ENGINES);
+
+    public final static String SIGN_MD5_RSA = "MD5withRSA";
+    public final static String SIGN_SHA256_RSA = "SHA256withRSA";
+
+    /**
+     * 缓存的RSA密钥数上限，超过后淘汰最久未使用的密钥
+     */
+    private static final int MAX_CACHED_RSA_KEYS = 1024;
+
+    /**
+     * 键为密钥类型加指纹，同一段编码按公钥和私钥解析的结果分开缓存
+     */
+    private static final LruCache<String, RsaKey> RSA_KEYS = new LruCache<>(MAX_CACHED_RSA_KEYS);
 
     public static byte[] desedeCBCEncrypt(byte[] source, String secretKey, String iv) {
         return desedeCrypt(source, WORK_MODE_CBC, secretKey, iv, Cipher.ENCRYPT_MODE);
@@ -46,119 +69,213 @@ public class CryptoUtils {
      * CBC工作模式需要IVParam
      */
     public static byte[] desedeCrypt(byte[] source, String mode, String secretKey, String iv, int cipherMode) {
+        return prepare(ALG_DESEDE, mode, secretKey, iv).crypt(source, cipherMode);
+    }
+
+    public static byte[] desCrypt(byte[] source, String mode, String secretKey, String iv, int cipherMode) {
+        return prepare(ALG_DES, mode, secretKey, iv).crypt(source, cipherMode);
+    }
+
+    public static byte[] aesEncrypt(String plainText, String key) {
+        return prepare(ALG_AES, WORK_MODE_ECB, key, null).encrypt(plainText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] aesDecrypt(String plainText, String key) {
+        byte[] byteContent = Base64.getDecoder().decode(plainText);
         try {
-            if (WORK_MODE_CBC.equals(mode)) {
-                DESedeKeySpec spec = new DESedeKeySpec(secretKey.getBytes(KEY_ENCODING));
-                SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("DESede");
-                SecretKey key = keyFactory.generateSecret(spec);
-                Cipher cipher = Cipher.getInstance("desede/CBC/PKCS5Padding");
-                IvParameterSpec ivParameterSpec = new IvParameterSpec(iv.getBytes());
-                cipher.init(cipherMode, key, ivParameterSpec);
-                return cipher.doFinal(source);
-            } else {
-                SecureRandom random = new SecureRandom();
-                DESKeySpec spec = new DESKeySpec(secretKey.getBytes(KEY_ENCODING));
-                SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("DESede");
-                SecretKey key = keyFactory.generateSecret(spec);
-                Cipher cipher = Cipher.getInstance("DESede");
-                cipher.init(cipherMode, key, random);
-                return cipher.doFinal(source);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return prepare(ALG_AES, WORK_MODE_ECB, key, null).decrypt(byteContent);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
         }
+        return new byte[]{};
     }
 
-    public static byte[] desCrypt(byte[] source, String mode, String secretKey, String iv, int cipherMode) {
-        Key deskey;
+    /**
+     * 获取加解密引擎，相同参数返回同一个引擎，密钥只派生一次
+     * 最多缓存MAX_CACHED_ENGINES个，超过后淘汰最久未使用的；高频使用的密钥可由调用方直接持有返回的引擎
+     * 密钥派生方式与desedeCrypt/desCrypt/aesEncrypt保持一致，CBC的iv按平台默认编码取字节
+     * GCM/CTR仅支持AES，iv由引擎每次随机生成并放在密文头部
+     *
+     * @param alg       ALG_DESEDE/ALG_DES/ALG_AES
+     * @param mode      WORK_MODE_CBC/WORK_MODE_ECB/WORK_MODE_GCM/WORK_MODE_CTR，其他值按ECB处理
+     * @param secretKey 密钥
+     * @param iv        CBC模式的iv，其他模式忽略
+     * @return 引擎
+     */
+    public static CipherEngine prepare(String alg, String mode, String secretKey, String iv) {
+        String workMode = WORK_MODE_CBC.equals(mode) || WORK_MODE_GCM.equals(mode) || WORK_MODE_CTR.equals(mode) ? mode : WORK_MODE_ECB;
+        EngineKey engineKey = new EngineKey(alg, workMode, secretKey, WORK_MODE_CBC.equals(workMode) ? iv : null);
+        CipherEngine engine = ENGINES.get(engineKey);
+        if (null != engine) {
+            return engine;
+        }
         try {
-            if (WORK_MODE_CBC.equals(mode)) {
-                DESedeKeySpec spec = new DESedeKeySpec(secretKey.getBytes());
-                SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("DES");
-                deskey = keyFactory.generateSecret(spec);
-                Cipher cipher = Cipher.getInstance("DES/CBC/PKCS5Padding");
-                IvParameterSpec ivps = new IvParameterSpec(iv.getBytes());
-                cipher.init(cipherMode, deskey, ivps);
-                return cipher.doFinal(source);
-            } else {
-                SecureRandom random = new SecureRandom();
-                DESKeySpec spec = new DESKeySpec(secretKey.getBytes());
-                SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("DES");
-                SecretKey key = keyFactory.generateSecret(spec);
-                Cipher cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
-                cipher.init(cipherMode, key, random);
-                return cipher.doFinal(source);
-            }
+            engine = createEngine(alg, workMode, secretKey, iv);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        CipherEngine existing = ENGINES.putIfAbsent(engineKey, engine);
+        return null == existing ? engine : existing;
     }
 
-    public static byte[] aesEncrypt(String plainText, String key) {
-        try {
-            SecretKeySpec keySpec = new SecretKeySpec(key.getBytes("UTF-8"), "AES");
-            //创建密码器
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            byte[] byteContent = plainText.getBytes("UTF-8");
-            //初始化
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec);
-            return cipher.doFinal(byteContent);
-        } catch (NoSuchPaddingException | BadPaddingException | IllegalBlockSizeException | UnsupportedEncodingException | NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new RuntimeException(e);
+    /**
+     * 清空prepare缓存的引擎及其持有的密钥，如密钥轮换后；已取得的引擎不受影响
+     */
+    public static void clearEngineCache() {
+        ENGINES.clear();
+    }
+
+    private static CipherEngine createEngine(String alg, String mode, String secretKey, String iv) throws Exception {
+        boolean cbc = WORK_MODE_CBC.equals(mode);
+        if (!ALG_AES.equals(alg) && (WORK_MODE_GCM.equals(mode) || WORK_MODE_CTR.equals(mode))) {
+            throw new IllegalArgumentException(mode + " mode only supports " + ALG_AES);
+        }
+        switch (alg) {
+            case ALG_DESEDE:
+                if (cbc) {
+                    DESedeKeySpec spec = new DESedeKeySpec(secretKey.getBytes(KEY_ENCODING));
+                    SecretKey key = SecretKeyFactory.getInstance("DESede").generateSecret(spec);
+                    return new CipherEngine("desede/CBC/PKCS5Padding", key, new IvParameterSpec(iv.getBytes()));
+                } else {
+                    DESKeySpec spec = new DESKeySpec(secretKey.getBytes(KEY_ENCODING));
+                    SecretKey key = SecretKeyFactory.getInstance("DESede").generateSecret(spec);
+                    return new CipherEngine("DESede", key, null);
+                }
+            case ALG_DES:
+                if (cbc) {
+                    DESedeKeySpec spec = new DESedeKeySpec(secretKey.getBytes());
+                    SecretKey key = SecretKeyFactory.getInstance("DES").generateSecret(spec);
+                    return new CipherEngine("DES/CBC/PKCS5Padding", key, new IvParameterSpec(iv.getBytes()));
+                } else {
+                    DESKeySpec spec = new DESKeySpec(secretKey.getBytes());
+                    SecretKey key = SecretKeyFactory.getInstance("DES").generateSecret(spec);
+                    return new CipherEngine("DES/ECB/PKCS5Padding", key, null);
+                }
+            case ALG_AES:
+                SecretKeySpec keySpec = new SecretKeySpec(secretKey.getBytes(KEY_ENCODING), "AES");
+                if (WORK_MODE_GCM.equals(mode)) {
+                    return new CipherEngine("AES/GCM/NoPadding", keySpec, null, 12);
+                }
+                if (WORK_MODE_CTR.equals(mode)) {
+                    return new CipherEngine("AES/CTR/NoPadding", keySpec, null, 16);
+                }
+                if (cbc) {
+                    return new CipherEngine("AES/CBC/PKCS5Padding", keySpec, new IvParameterSpec(iv.getBytes()));
+                }
+                return new CipherEngine("AES/ECB/PKCS5Padding", keySpec, null);
+            default:
+                throw new IllegalArgumentException("unsupported algorithm: " + alg);
         }
     }
 
-    public static byte[] aesDecrypt(String plainText, String key) {
-        try {
-            SecretKeySpec keySpec = new SecretKeySpec(key.getBytes("UTF-8"), "AES");
-            //创建密码器
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            byte[] byteContent = Base64.getDecoder().decode(plainText);
-            //初始化
-            cipher.init(Cipher.DECRYPT_MODE, keySpec);
-            return cipher.doFinal(byteContent);
-        } catch (NoSuchPaddingException | BadPaddingException | IllegalBlockSizeException | UnsupportedEncodingException | NoSuchAlgorithmException | InvalidKeyException e) {
-            e.printStackTrace();
+    @Value
+    private static class EngineKey {
+        String alg;
+        String mode;
+        String secretKey;
+        String iv;
+    }
+
+    /**
+     * 解析Base64编码的X509公钥，按密钥指纹缓存，同一个密钥只解析一次
+     *
+     * @param base64PubKey 公钥
+     * @return 线程安全，可以保存复用
+     */
+    public static RsaKey rsaPublicKey(String base64PubKey) {
+        return rsaPublicKey(Base64.getDecoder().decode(base64PubKey));
+    }
+
+    public static RsaKey rsaPublicKey(byte[] encoded) {
+        return rsaKey(encoded, false);
+    }
+
+    /**
+     * 解析Base64编码的PKCS8私钥，按密钥指纹缓存，同一个密钥只解析一次
+     *
+     * @param base64PriKey 私钥
+     * @return 线程安全，可以保存复用
+     */
+    public static RsaKey rsaPrivateKey(String base64PriKey) {
+        return rsaPrivateKey(Base64.getDecoder().decode(base64PriKey));
+    }
+
+    public static RsaKey rsaPrivateKey(byte[] encoded) {
+        return rsaKey(encoded, true);
+    }
+
+    private static RsaKey rsaKey(byte[] encoded, boolean privateKey) {
+        String fingerprint = CodecUtils.encodeHex(HashUtils.use(HashUtils.ALG_SHA256).digest(encoded));
+        String cacheKey = (privateKey ? "private:" : "public:") + fingerprint;
+        RsaKey key = RSA_KEYS.get(cacheKey);
+        if (null != key) {
+            return key;
         }
-        return new byte[]{};
+        key = privateKey ? RsaKey.parsePrivate(encoded, fingerprint) : RsaKey.parsePublic(encoded, fingerprint);
+        RsaKey existing = RSA_KEYS.putIfAbsent(cacheKey, key);
+        return null == existing ? key : existing;
     }
 
     /**
-     * 用私钥对信息生成数字签名
+     * 清空解析好的RSA密钥缓存，已持有的RsaKey不受影响
+     */
+    public static void clearRsaKeyCache() {
+        RSA_KEYS.clear();
+    }
+
+    /**
+     * 用私钥对信息生成MD5withRSA数字签名
      *
      * @param data       加密数据
      * @param privateKey 私钥
      */
     public static String rsaSign(byte[] data, String privateKey) throws Exception {
-        // 解密由base64编码的私钥
-        byte[] keyBytes = Base64.getDecoder().decode(privateKey);
-        // 构造PKCS8EncodedKeySpec对象
-        PKCS8EncodedKeySpec pkcs8KeySpec = new PKCS8EncodedKeySpec(keyBytes);
-        // KEY_ALGORITHM 指定的加密算法
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        // 取私钥匙对象
-        PrivateKey priKey = keyFactory.generatePrivate(pkcs8KeySpec);
-        // 用私钥对信息生成数字签名
-        Signature signature = Signature.getInstance("MD5withRSA");
-        signature.initSign(priKey);
-        signature.update(data);
-        return Base64.getEncoder().encodeToString(signature.sign());
+        return rsaSign(data, privateKey, SIGN_MD5_RSA);
+    }
+
+    /**
+     * 用私钥对信息生成数字签名
+     *
+     * @param data       加密数据
+     * @param privateKey 私钥
+     * @param algorithm  SIGN_MD5_RSA/SIGN_SHA256_RSA
+     * @return Base64编码的签名
+     */
+    public static String rsaSign(byte[] data, String privateKey, String algorithm) {
+        return Base64.getEncoder().encodeToString(rsaPrivateKey(privateKey).sign(data, algorithm));
+    }
+
+    /**
+     * 用公钥校验MD5withRSA数字签名
+     *
+     * @param data      数据
+     * @param sign      Base64编码的签名
+     * @param publicKey 公钥
+     */
+    public static boolean rsaVerify(byte[] data, String sign, String publicKey) {
+        return rsaVerify(data, sign, publicKey, SIGN_MD5_RSA);
+    }
+
+    /**
+     * 用公钥校验数字签名
+     *
+     * @param data      数据
+     * @param sign      Base64编码的签名
+     * @param publicKey 公钥
+     * @param algorithm SIGN_MD5_RSA/SIGN_SHA256_RSA
+     */
+    public static boolean rsaVerify(byte[] data, String sign, String publicKey, String algorithm) {
+        return rsaPublicKey(publicKey).verify(data, Base64.getDecoder().decode(sign), algorithm);
     }
 
     /**
      * 公钥加密
      *
      * @param data         加密数据
-     * @param base64PubKey 私钥
+     * @param base64PubKey 公钥
      */
     public static byte[] rsaPubKeyEncrypt(byte[] data, String base64PubKey) throws Exception {
-        // 解密由base64编码的私钥
-        byte[] keyBytes = Base64.getDecoder().decode(base64PubKey);
-        RSAPublicKey rsaPubKey = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(keyBytes));
-        Cipher cipher = Cipher.getInstance("RSA");
-        //初始化
-        cipher.init(Cipher.ENCRYPT_MODE, rsaPubKey);
-        return cipher.doFinal(data);
+        return rsaPublicKey(base64PubKey).encrypt(data);
     }
 
     /**
@@ -167,23 +284,34 @@ public class CryptoUtils {
      * @param data         加密数据
      * @param base64PriKey 私钥
      */
-    @SneakyThrows
     public static byte[] rsaPriKeyDecrypt(byte[] data, String base64PriKey){
-        // 解密由base64编码的私钥
-        byte[] keyBytes = Base64.getDecoder().decode(base64PriKey);
-        RSAPrivateKey rsaPriKey = (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(keyBytes));
-        Cipher cipher = Cipher.getInstance("RSA");
-        //初始化
-        cipher.init(Cipher.DECRYPT_MODE, rsaPriKey);
-        return cipher.doFinal(data);
+        return rsaPrivateKey(base64PriKey).decrypt(data);
     }
 
-    @SneakyThrows
+    /**
+     * 在当前线程生成1024位密钥对，请求路径上需要更长的密钥时使用RsaKeyPairPool预生成
+     *
+     * @return [Base64编码的X509公钥, Base64编码的PKCS8私钥]
+     */
     public static List<String> rsaKeyPairGenerate(){
-        List<String> keys = new ArrayList<>(2);
+        return rsaKeyPairGenerate(1024);
+    }
+
+    /**
+     * 在当前线程生成密钥对
+     *
+     * @param keySize 密钥长度
+     * @return [Base64编码的X509公钥, Base64编码的PKCS8私钥]
+     */
+    @SneakyThrows
+    public static List<String> rsaKeyPairGenerate(int keySize){
         KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
-        keyPairGen.initialize(1024,new SecureRandom());
-        KeyPair keyPair = keyPairGen.generateKeyPair();
+        keyPairGen.initialize(keySize,new SecureRandom());
+        return encodeKeyPair(keyPairGen.generateKeyPair());
+    }
+
+    static List<String> encodeKeyPair(KeyPair keyPair) {
+        List<String> keys = new ArrayList<>(2);
         // 得到私钥
         RSAPrivateKey privateKey = (RSAPrivateKey) keyPair.getPrivate();
         // 得到公钥
@@ -198,20 +326,13 @@ public class CryptoUtils {
 
     /**
      * 16进制字符串转字节数组 两位16进制转一个字节
+     * 大小写均可，长度为奇数或包含非hex字符时抛出IllegalArgumentException
      *
      * @param hexStr hex
      * @return bytes
      */
     public static byte[] hexStrToBytes(String hexStr) {
-        char[] hexs = hexStr.toCharArray();
-        byte[] bytes = new byte[hexStr.length() / 2];
-
-        for (int i = 0; i < bytes.length; ++i) {
-            int n = HEX_SEQUENCE.indexOf(hexs[2 * i]) * 16;
-            n += HEX_SEQUENCE.indexOf(hexs[2 * i + 1]);
-            bytes[i] = (byte) n;
-        }
-        return bytes;
+        return CodecUtils.decodeHex(hexStr);
     }
 
     /**
@@ -221,11 +342,7 @@ public class CryptoUtils {
      * @return string
      */
     public static String bytesToHexStr(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
+        return CodecUtils.encodeHex(bytes);
     }
 
 
@@ -1,59 +1,380 @@
 package priv.zujool.crypto;
 
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
- * 
+ * hash工具，同一算法共享一个线程安全的实例
+ * 内部以原型MessageDigest克隆出的实例组成对象池，每次计算借出一个，字符串按UTF-8分段写入摘要，不拼接副本
+ *
  * @author zujool  At 2020/4/7 10:23
 **/
 public class HashUtils {
 
     public static final String ALG_MD5 = "md5";
     public static final String ALG_SHA1 = "sha-1";
+    public static final String ALG_SHA256 = "sha-256";
+    public static final String ALG_SHA512 = "sha-512";
 
+    public static final String HMAC_SHA1 = "HmacSHA1";
+    public static final String HMAC_SHA256 = "HmacSHA256";
+    public static final String HMAC_SHA512 = "HmacSHA512";
 
-    private MessageDigest messageDigest;
+    private static final ConcurrentMap<String, HashUtils> INSTANCES = new ConcurrentHashMap<>();
 
-    private void setNowMessageDigest(MessageDigest messageDigest) {
-        this.messageDigest = messageDigest;
-    }
+    /**
+     * 不小于该大小的文件使用内存映射
+     */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final long MAP_REGION_SIZE = 64 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
 
-    private HashUtils(){}
+    private final String algorithm;
+
+    /**
+     * 只用于克隆，本身从不更新
+     */
+    private final MessageDigest prototype;
+
+    private final BoundedPool<DigestState> pool = new BoundedPool<>();
+
+    private HashUtils(String algorithm, MessageDigest prototype) {
+        this.algorithm = algorithm;
+        this.prototype = prototype;
+    }
 
     /**
      * 应用hash算法
      * @param hashAlgorithm 支持的hash算法
-     * @return 工具类
+     * @return 工具类，线程安全，可以保存复用
      */
     public static HashUtils use(String hashAlgorithm){
-        HashUtils hashUtil = new HashUtils();
+        HashUtils hashUtil = INSTANCES.get(hashAlgorithm);
+        if (null != hashUtil) {
+            return hashUtil;
+        }
         try {
-            MessageDigest messageDigest = MessageDigest.getInstance(hashAlgorithm);
-            hashUtil.setNowMessageDigest(messageDigest);
+            hashUtil = new HashUtils(hashAlgorithm, MessageDigest.getInstance(hashAlgorithm));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
-        return hashUtil;
+        HashUtils existing = INSTANCES.putIfAbsent(hashAlgorithm, hashUtil);
+        return null == existing ? hashUtil : existing;
+    }
+
+    /**
+     * 预先计算好密钥状态的HMAC
+     * @param macAlgorithm HMAC_SHA256等
+     * @param key 密钥
+     * @return Hmac，线程安全，应保存复用
+     */
+    public static Hmac hmac(String macAlgorithm, byte[] key) {
+        return new Hmac(macAlgorithm, key);
+    }
+
+    public static Hmac hmac(String macAlgorithm, String key) {
+        return new Hmac(macAlgorithm, key.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * 依次对各部分的UTF-8编码求hash，结果与拼接后求hash相同
+     * @param target 字符串，null按"null"处理
+     * @return 小写hex
+     */
     public String getHashString(String ...target){
-        StringBuilder builder = new StringBuilder();
         if (target.length == 0){
             throw new RuntimeException("hash string can not be empty");
         }
-        for (String str:target){
-            builder.append(str);
+        DigestState state = borrow(target);
+        char[] hex = new char[state.out.length << 1];
+        CodecUtils.encodeHex(state.finish(), 0, state.out.length, hex, 0, false);
+        pool.offer(state);
+        return new String(hex);
+    }
+
+    public byte[] digest(CharSequence... parts) {
+        DigestState state = borrow(parts);
+        byte[] result = state.md.digest();
+        pool.offer(state);
+        return result;
+    }
+
+    public byte[] digest(byte[] data) {
+        DigestState state = borrow();
+        byte[] result = state.md.digest(data);
+        pool.offer(state);
+        return result;
+    }
+
+    /**
+     * 对buffer剩余数据求hash，buffer被读完
+     */
+    public byte[] digest(ByteBuffer data) {
+        DigestState state = borrow();
+        state.md.update(data);
+        byte[] result = state.md.digest();
+        pool.offer(state);
+        return result;
+    }
+
+    /**
+     * 将摘要写入dst，dst剩余空间需不少于getDigestLength
+     * @return 写入的字节数
+     */
+    public int digestInto(byte[] dst, int offset, CharSequence... parts) {
+        DigestState state = borrow(parts);
+        int length;
+        try {
+            length = state.md.digest(dst, offset, state.out.length);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+        pool.offer(state);
+        return length;
+    }
+
+    /**
+     * 将摘要的小写hex写入dst，dst剩余空间需不少于getDigestLength的两倍
+     * @return 写入的字符数
+     */
+    public int hexInto(char[] dst, int offset, CharSequence... parts) {
+        DigestState state = borrow(parts);
+        int length = CodecUtils.encodeHex(state.finish(), 0, state.out.length, dst, offset, false);
+        pool.offer(state);
+        return length;
+    }
+
+    /**
+     * 对文件求hash，数据不复制到堆上的byte[]
+     * 大文件按MAP_REGION_SIZE分段内存映射，小文件通过复用的direct buffer读取
+     */
+    public byte[] digest(Path file) throws IOException {
+        DigestState state = borrow();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_REGION_SIZE) {
+                    long length = Math.min(MAP_REGION_SIZE, size - position);
+                    state.md.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                }
+            } else {
+                ByteBuffer buffer = state.readBuffer();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    state.md.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            state.md.reset();
+            pool.offer(state);
+            throw e;
+        }
+        byte[] result = state.md.digest();
+        pool.offer(state);
+        return result;
+    }
+
+    public String digestHex(Path file) throws IOException {
+        return CodecUtils.encodeHex(digest(file));
+    }
+
+    /**
+     * 在有界的ForkJoinPool上并行计算多个文件的hash，每个文件完成时立即回调
+     * 回调在工作线程上执行，需自行保证线程安全；单个文件失败不影响其他文件
+     *
+     * @param files       文件
+     * @param parallelism 并行度
+     * @param callback    每个文件的结果，可为null
+     * @return 汇总，包含吞吐量
+     */
+    public FileHashReport digestFiles(Collection<Path> files, int parallelism, Consumer<FileDigest> callback) throws InterruptedException {
+        long start = System.nanoTime();
+        LongAdder bytes = new LongAdder();
+        LongAdder failures = new LongAdder();
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(forkJoinPool.submit(() -> {
+                    long fileStart = System.nanoTime();
+                    FileDigest result;
+                    try {
+                        long size = Files.size(file);
+                        result = new FileDigest(file, digest(file), size, System.nanoTime() - fileStart, null);
+                        bytes.add(size);
+                    } catch (IOException | RuntimeException e) {
+                        result = new FileDigest(file, null, 0, System.nanoTime() - fileStart, e);
+                        failures.increment();
+                    }
+                    if (null != callback) {
+                        callback.accept(result);
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // 只有回调抛出的异常会到这里
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            forkJoinPool.shutdownNow();
+        }
+        return new FileHashReport(files.size(), failures.intValue(), bytes.sum(), System.nanoTime() - start);
+    }
+
+    public int getDigestLength() {
+        return prototype.getDigestLength();
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    DigestState borrow() {
+        DigestState state = pool.poll();
+        if (null != state) {
+            return state;
+        }
+        MessageDigest md;
+        try {
+            md = (MessageDigest) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                md = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return new DigestState(md);
+    }
+
+    private DigestState borrow(CharSequence[] parts) {
+        DigestState state = borrow();
+        for (CharSequence part : parts) {
+            state.utf8.write(null == part ? "null" : part);
+        }
+        return state;
+    }
+
+    static final class DigestState {
+
+        final MessageDigest md;
+
+        /**
+         * 复用的摘要输出缓冲
+         */
+        final byte[] out;
+
+        final Utf8Sink utf8;
+
+        /**
+         * 复用的文件读取缓冲
+         */
+        private ByteBuffer readBuffer;
+
+        DigestState(MessageDigest md) {
+            this.md = md;
+            this.out = new byte[md.getDigestLength()];
+            this.utf8 = new Utf8Sink(md::update);
+        }
+
+        byte[] finish() {
+            try {
+                md.digest(out, 0, out.length);
+            } catch (DigestException e) {
+                throw new RuntimeException(e);
+            }
+            return out;
+        }
+
+        ByteBuffer readBuffer() {
+            if (null == readBuffer) {
+                readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            }
+            readBuffer.clear();
+            return readBuffer;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class FileDigest {
+
+        private final Path path;
+
+        /**
+         * 失败时为null
+         */
+        private final byte[] digest;
+
+        private final long size;
+
+        private final long nanos;
+
+        private final Exception error;
+
+        FileDigest(Path path, byte[] digest, long size, long nanos, Exception error) {
+            this.path = path;
+            this.digest = digest;
+            this.size = size;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public String getDigestHex() {
+            return null == digest ? null : CodecUtils.encodeHex(digest);
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class FileHashReport {
+
+        private final int files;
+
+        private final int failures;
+
+        private final long bytes;
+
+        private final long nanos;
+
+        FileHashReport(int files, int failures, long bytes, long nanos) {
+            this.files = files;
+            this.failures = failures;
+            this.bytes = bytes;
+            this.nanos = nanos;
         }
-        String finalStr = builder.toString();
-        byte[] bytes = finalStr.getBytes();
-        byte[] results = messageDigest.digest(bytes);
-        StringBuilder stringBuilder = new StringBuilder();
-        for (byte result : results) {
-            // 将byte数组转化为16进制字符存入stringBuilder中
-            stringBuilder.append(String.format("%02x", result));
+
+        public double getBytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
         }
-        return stringBuilder.toString();
     }
 
 }
@@ -0,0 +1,164 @@
+package priv.zujool.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * 预先计算好密钥状态的HMAC，通过HashUtils.hmac获取
+ * 初始化后的Mac在doFinal后回到初始化状态，放回池中复用，不会重复处理密钥
+ * 线程安全
+ *
+ * @author zujool
+ **/
+public class Hmac {
+
+    private final String algorithm;
+
+    private final SecretKeySpec key;
+
+    /**
+     * 只用于克隆，本身从不更新
+     */
+    private final Mac prototype;
+
+    private final BoundedPool<MacState> pool = new BoundedPool<>();
+
+    Hmac(String algorithm, byte[] key) {
+        this.algorithm = algorithm;
+        this.key = new SecretKeySpec(key, algorithm);
+        this.prototype = newMac();
+    }
+
+    public byte[] mac(byte[] data) {
+        MacState state = borrow();
+        byte[] result = state.mac.doFinal(data);
+        pool.offer(state);
+        return result;
+    }
+
+    /**
+     * 对buffer剩余数据计算，buffer被读完
+     */
+    public byte[] mac(ByteBuffer data) {
+        MacState state = borrow();
+        state.mac.update(data);
+        byte[] result = state.mac.doFinal();
+        pool.offer(state);
+        return result;
+    }
+
+    /**
+     * 依次对各部分的UTF-8编码计算，结果与拼接后计算相同
+     */
+    public byte[] mac(CharSequence... parts) {
+        MacState state = borrow(parts);
+        byte[] result = state.mac.doFinal();
+        pool.offer(state);
+        return result;
+    }
+
+    /**
+     * @return 小写hex
+     */
+    public String macHex(CharSequence... parts) {
+        MacState state = borrow(parts);
+        char[] hex = new char[state.out.length << 1];
+        CodecUtils.encodeHex(state.finish(), 0, state.out.length, hex, 0, false);
+        pool.offer(state);
+        return new String(hex);
+    }
+
+    /**
+     * 将结果写入dst，dst剩余空间需不少于getMacLength
+     * @return 写入的字节数
+     */
+    public int macInto(byte[] dst, int offset, CharSequence... parts) {
+        MacState state = borrow(parts);
+        try {
+            state.mac.doFinal(dst, offset);
+        } catch (ShortBufferException e) {
+            throw new IllegalArgumentException(e);
+        }
+        pool.offer(state);
+        return state.out.length;
+    }
+
+    /**
+     * 将结果的小写hex写入dst，dst剩余空间需不少于getMacLength的两倍
+     * @return 写入的字符数
+     */
+    public int hexInto(char[] dst, int offset, CharSequence... parts) {
+        MacState state = borrow(parts);
+        int length = CodecUtils.encodeHex(state.finish(), 0, state.out.length, dst, offset, false);
+        pool.offer(state);
+        return length;
+    }
+
+    public int getMacLength() {
+        return prototype.getMacLength();
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    private MacState borrow(CharSequence[] parts) {
+        MacState state = borrow();
+        for (CharSequence part : parts) {
+            state.utf8.write(null == part ? "null" : part);
+        }
+        return state;
+    }
+
+    private MacState borrow() {
+        MacState state = pool.poll();
+        if (null != state) {
+            return state;
+        }
+        Mac mac;
+        try {
+            mac = (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            mac = newMac();
+        }
+        return new MacState(mac);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class MacState {
+
+        private final Mac mac;
+
+        private final byte[] out;
+
+        private final Utf8Sink utf8;
+
+        MacState(Mac mac) {
+            this.mac = mac;
+            this.out = new byte[mac.getMacLength()];
+            this.utf8 = new Utf8Sink(mac::update);
+        }
+
+        byte[] finish() {
+            try {
+                mac.doFinal(out, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            return out;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package priv.zujool.crypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 有上限的LRU缓存，用于缓存派生好的密钥等创建成本高的对象
+ * 按访问顺序排列的LinkedHashMap，读写都在锁内且为O(1)，超过上限时淘汰最久未访问的条目
+ * 值的创建在锁外进行，并发创建同一个key时以先放入的为准
+ *
+ * @author zujool
+ **/
+final class LruCache<K, V> {
+
+    private final LinkedHashMap<K, V> map;
+
+    LruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * @return 已存在的值，不存在时放入value并返回null
+     */
+    synchronized V putIfAbsent(K key, V value) {
+        V existing = map.get(key);
+        if (null != existing) {
+            return existing;
+        }
+        map.put(key, value);
+        return null;
+    }
+
+    synchronized void clear() {
+        map.clear();
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+}
@@ -0,0 +1,494 @@
+package priv.zujool.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static priv.zujool.crypto.XxHash64.getInt;
+import static priv.zujool.crypto.XxHash64.getLong;
+
+/**
+ * MurmurHash3，x86_32与x64_128两个变体，非加密hash，结果与Guava的murmur3_32/murmur3_128一致
+ * 128位结果以long[2]{h1, h2}写入调用方提供的数组，toBytes按小端转为16字节
+ * CharSequence按UTF-8编码计算；流式计算使用Hasher32/Hasher128，实例不是线程安全的
+ *
+ * @author zujool
+ **/
+public final class Murmur3 {
+
+    private static final int C1_32 = 0xcc9e2d51;
+    private static final int C2_32 = 0x1b873593;
+
+    private static final long C1_128 = 0x87c37b91114253d5L;
+    private static final long C2_128 = 0x4cf5ad432745937fL;
+
+    private static final BoundedPool<Hasher32> POOL_32 = new BoundedPool<>();
+
+    private static final BoundedPool<Hasher128> POOL_128 = new BoundedPool<>();
+
+    private Murmur3() {
+    }
+
+    public static int hash32(byte[] data) {
+        return hash32(data, 0, data.length, 0);
+    }
+
+    public static int hash32(byte[] data, int offset, int length, int seed) {
+        int h1 = seed;
+        int p = offset;
+        int blockEnd = offset + (length & ~3);
+        for (; p < blockEnd; p += 4) {
+            h1 = mixH1(h1, getInt(data, p));
+        }
+        int k1 = 0;
+        switch (length & 3) {
+            case 3:
+                k1 ^= (data[p + 2] & 0xff) << 16;
+            case 2:
+                k1 ^= (data[p + 1] & 0xff) << 8;
+            case 1:
+                k1 ^= data[p] & 0xff;
+                h1 ^= mixK1(k1);
+            default:
+        }
+        return fmix32(h1 ^ length);
+    }
+
+    /**
+     * 对position到limit之间的数据计算，不改变buffer的position
+     */
+    public static int hash32(ByteBuffer data, int seed) {
+        if (data.hasArray()) {
+            return hash32(data.array(), data.arrayOffset() + data.position(), data.remaining(), seed);
+        }
+        boolean le = data.order() == ByteOrder.LITTLE_ENDIAN;
+        int h1 = seed;
+        int p = data.position();
+        int length = data.remaining();
+        int blockEnd = p + (length & ~3);
+        for (; p < blockEnd; p += 4) {
+            h1 = mixH1(h1, le ? data.getInt(p) : Integer.reverseBytes(data.getInt(p)));
+        }
+        int k1 = 0;
+        switch (length & 3) {
+            case 3:
+                k1 ^= (data.get(p + 2) & 0xff) << 16;
+            case 2:
+                k1 ^= (data.get(p + 1) & 0xff) << 8;
+            case 1:
+                k1 ^= data.get(p) & 0xff;
+                h1 ^= mixK1(k1);
+            default:
+        }
+        return fmix32(h1 ^ length);
+    }
+
+    /**
+     * 按UTF-8编码计算，不分配内存；纯ASCII时直接按字符读取，否则复用池中的流式实例
+     */
+    public static int hash32(CharSequence data, int seed) {
+        if (XxHash64.isAscii(data)) {
+            int length = data.length();
+            int h1 = seed;
+            int p = 0;
+            int blockEnd = length & ~3;
+            for (; p < blockEnd; p += 4) {
+                h1 = mixH1(h1, getInt(data, p));
+            }
+            int k1 = 0;
+            switch (length & 3) {
+                case 3:
+                    k1 ^= data.charAt(p + 2) << 16;
+                case 2:
+                    k1 ^= data.charAt(p + 1) << 8;
+                case 1:
+                    k1 ^= data.charAt(p);
+                    h1 ^= mixK1(k1);
+                default:
+            }
+            return fmix32(h1 ^ length);
+        }
+        Hasher32 hasher = POOL_32.poll();
+        if (null == hasher) {
+            hasher = new Hasher32(seed);
+        } else {
+            hasher.reset(seed);
+        }
+        hasher.update(data);
+        int value = hasher.getValue();
+        POOL_32.offer(hasher);
+        return value;
+    }
+
+    public static byte[] hash128(byte[] data) {
+        long[] out = new long[2];
+        hash128(data, 0, data.length, 0, out);
+        return toBytes(out);
+    }
+
+    /**
+     * @param out 结果{h1, h2}
+     */
+    public static void hash128(byte[] data, int offset, int length, long seed, long[] out) {
+        long h1 = seed;
+        long h2 = seed;
+        int p = offset;
+        int blockEnd = offset + (length & ~15);
+        for (; p < blockEnd; p += 16) {
+            long k1 = getLong(data, p);
+            long k2 = getLong(data, p + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int rem = length & 15;
+        for (int i = rem - 1; i >= 8; i--) {
+            k2 ^= (data[p + i] & 0xffL) << ((i - 8) << 3);
+        }
+        for (int i = Math.min(rem, 8) - 1; i >= 0; i--) {
+            k1 ^= (data[p + i] & 0xffL) << (i << 3);
+        }
+        finish128(h1, h2, k1, k2, rem, length, out);
+    }
+
+    /**
+     * 对position到limit之间的数据计算，不改变buffer的position
+     *
+     * @param out 结果{h1, h2}
+     */
+    public static void hash128(ByteBuffer data, long seed, long[] out) {
+        if (data.hasArray()) {
+            hash128(data.array(), data.arrayOffset() + data.position(), data.remaining(), seed, out);
+            return;
+        }
+        boolean le = data.order() == ByteOrder.LITTLE_ENDIAN;
+        long h1 = seed;
+        long h2 = seed;
+        int p = data.position();
+        int length = data.remaining();
+        int blockEnd = p + (length & ~15);
+        for (; p < blockEnd; p += 16) {
+            long k1 = XxHash64.getLong(data, p, le);
+            long k2 = XxHash64.getLong(data, p + 8, le);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int rem = length & 15;
+        for (int i = rem - 1; i >= 8; i--) {
+            k2 ^= (data.get(p + i) & 0xffL) << ((i - 8) << 3);
+        }
+        for (int i = Math.min(rem, 8) - 1; i >= 0; i--) {
+            k1 ^= (data.get(p + i) & 0xffL) << (i << 3);
+        }
+        finish128(h1, h2, k1, k2, rem, length, out);
+    }
+
+    /**
+     * 按UTF-8编码计算，不分配内存；纯ASCII时直接按字符读取，否则复用池中的流式实例
+     *
+     * @param out 结果{h1, h2}
+     */
+    public static void hash128(CharSequence data, long seed, long[] out) {
+        if (XxHash64.isAscii(data)) {
+            int length = data.length();
+            long h1 = seed;
+            long h2 = seed;
+            int p = 0;
+            int blockEnd = length & ~15;
+            for (; p < blockEnd; p += 16) {
+                h1 ^= mixK1(getLong(data, p));
+                h1 = Long.rotateLeft(h1, 27) + h2;
+                h1 = h1 * 5 + 0x52dce729;
+                h2 ^= mixK2(getLong(data, p + 8));
+                h2 = Long.rotateLeft(h2, 31) + h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+            long k1 = 0;
+            long k2 = 0;
+            int rem = length & 15;
+            for (int i = rem - 1; i >= 8; i--) {
+                k2 ^= (long) data.charAt(p + i) << ((i - 8) << 3);
+            }
+            for (int i = Math.min(rem, 8) - 1; i >= 0; i--) {
+                k1 ^= (long) data.charAt(p + i) << (i << 3);
+            }
+            finish128(h1, h2, k1, k2, rem, length, out);
+            return;
+        }
+        Hasher128 hasher = POOL_128.poll();
+        if (null == hasher) {
+            hasher = new Hasher128(seed);
+        } else {
+            hasher.reset(seed);
+        }
+        hasher.update(data);
+        hasher.getValue(out);
+        POOL_128.offer(hasher);
+    }
+
+    /**
+     * {h1, h2}按小端转为16字节，与Guava HashCode.asBytes一致
+     */
+    public static byte[] toBytes(long[] value) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (value[0] >>> (i << 3));
+            bytes[i + 8] = (byte) (value[1] >>> (i << 3));
+        }
+        return bytes;
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1_32;
+        k1 = Integer.rotateLeft(k1, 15);
+        return k1 * C2_32;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= mixK1(k1);
+        h1 = Integer.rotateLeft(h1, 13);
+        return h1 * 5 + 0xe6546b64;
+    }
+
+    private static int fmix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1_128;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2_128;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2_128;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1_128;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static void finish128(long h1, long h2, long k1, long k2, int rem, long length, long[] out) {
+        if (rem > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (rem > 0) {
+            h1 ^= mixK1(k1);
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        out[0] = h1;
+        out[1] = h2;
+    }
+
+    /**
+     * 流式murmur3 x86_32
+     */
+    public static final class Hasher32 {
+
+        private final byte[] buffer = new byte[4];
+
+        private final Utf8Sink utf8 = new Utf8Sink(this::update);
+
+        private int seed;
+
+        private int h1;
+
+        private int bufferSize;
+
+        private int totalLength;
+
+        public Hasher32(int seed) {
+            reset(seed);
+        }
+
+        public Hasher32 reset(int seed) {
+            this.seed = seed;
+            this.h1 = seed;
+            this.bufferSize = 0;
+            this.totalLength = 0;
+            return this;
+        }
+
+        public Hasher32 reset() {
+            return reset(seed);
+        }
+
+        public void update(byte[] data, int offset, int length) {
+            totalLength += length;
+            int p = offset;
+            int end = offset + length;
+            while (bufferSize > 0 && p < end) {
+                buffer[bufferSize++] = data[p++];
+                if (bufferSize == 4) {
+                    h1 = mixH1(h1, getInt(buffer, 0));
+                    bufferSize = 0;
+                }
+            }
+            for (; p + 4 <= end; p += 4) {
+                h1 = mixH1(h1, getInt(data, p));
+            }
+            while (p < end) {
+                buffer[bufferSize++] = data[p++];
+            }
+        }
+
+        public void update(byte[] data) {
+            update(data, 0, data.length);
+        }
+
+        /**
+         * 按UTF-8编码追加
+         */
+        public void update(CharSequence data) {
+            utf8.write(data);
+        }
+
+        public int getValue() {
+            int h = h1;
+            int k1 = 0;
+            switch (bufferSize) {
+                case 3:
+                    k1 ^= (buffer[2] & 0xff) << 16;
+                case 2:
+                    k1 ^= (buffer[1] & 0xff) << 8;
+                case 1:
+                    k1 ^= buffer[0] & 0xff;
+                    h ^= mixK1(k1);
+                default:
+            }
+            return fmix32(h ^ totalLength);
+        }
+    }
+
+    /**
+     * 流式murmur3 x64_128
+     */
+    public static final class Hasher128 {
+
+        private final byte[] buffer = new byte[16];
+
+        private final Utf8Sink utf8 = new Utf8Sink(this::update);
+
+        private long seed;
+
+        private long h1;
+
+        private long h2;
+
+        private int bufferSize;
+
+        private long totalLength;
+
+        public Hasher128(long seed) {
+            reset(seed);
+        }
+
+        public Hasher128 reset(long seed) {
+            this.seed = seed;
+            this.h1 = seed;
+            this.h2 = seed;
+            this.bufferSize = 0;
+            this.totalLength = 0;
+            return this;
+        }
+
+        public Hasher128 reset() {
+            return reset(seed);
+        }
+
+        public void update(byte[] data, int offset, int length) {
+            totalLength += length;
+            int p = offset;
+            int end = offset + length;
+            if (bufferSize > 0) {
+                int n = Math.min(16 - bufferSize, length);
+                System.arraycopy(data, p, buffer, bufferSize, n);
+                bufferSize += n;
+                p += n;
+                if (bufferSize < 16) {
+                    return;
+                }
+                block(buffer, 0);
+                bufferSize = 0;
+            }
+            for (; p + 16 <= end; p += 16) {
+                block(data, p);
+            }
+            if (p < end) {
+                System.arraycopy(data, p, buffer, 0, end - p);
+                bufferSize = end - p;
+            }
+        }
+
+        public void update(byte[] data) {
+            update(data, 0, data.length);
+        }
+
+        /**
+         * 按UTF-8编码追加
+         */
+        public void update(CharSequence data) {
+            utf8.write(data);
+        }
+
+        /**
+         * @param out 结果{h1, h2}
+         */
+        public void getValue(long[] out) {
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = bufferSize - 1; i >= 8; i--) {
+                k2 ^= (buffer[i] & 0xffL) << ((i - 8) << 3);
+            }
+            for (int i = Math.min(bufferSize, 8) - 1; i >= 0; i--) {
+                k1 ^= (buffer[i] & 0xffL) << (i << 3);
+            }
+            finish128(h1, h2, k1, k2, bufferSize, totalLength, out);
+        }
+
+        public byte[] getBytes() {
+            long[] out = new long[2];
+            getValue(out);
+            return toBytes(out);
+        }
+
+        private void block(byte[] data, int p) {
+            h1 ^= mixK1(getLong(data, p));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(getLong(data, p + 8));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+package priv.zujool.crypto;
+
+import lombok.SneakyThrows;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 解析好的RSA公钥或私钥，通过CryptoUtils.rsaPublicKey/rsaPrivateKey获取，按密钥指纹缓存
+ * 已初始化的Signature与Cipher在sign/verify/doFinal后回到初始化状态，放回池中复用
+ * 公钥只能verify/encrypt，私钥只能sign/decrypt
+ * 线程安全
+ *
+ * @author zujool
+ **/
+public class RsaKey {
+
+    private final Key key;
+
+    private final boolean privateKey;
+
+    private final String fingerprint;
+
+    /**
+     * 签名算法到已初始化Signature池的映射
+     */
+    private final ConcurrentMap<String, BoundedPool<Signature>> signatures = new ConcurrentHashMap<>();
+
+    private final BoundedPool<Cipher> ciphers = new BoundedPool<>();
+
+    private RsaKey(Key key, boolean privateKey, String fingerprint) {
+        this.key = key;
+        this.privateKey = privateKey;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param encoded X509编码的公钥
+     */
+    static RsaKey parsePublic(byte[] encoded, String fingerprint) {
+        try {
+            PublicKey key = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encoded));
+            return new RsaKey(key, false, fingerprint);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("invalid RSA public key", e);
+        }
+    }
+
+    /**
+     * @param encoded PKCS8编码的私钥
+     */
+    static RsaKey parsePrivate(byte[] encoded, String fingerprint) {
+        try {
+            PrivateKey key = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(encoded));
+            return new RsaKey(key, true, fingerprint);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("invalid RSA private key", e);
+        }
+    }
+
+    /**
+     * @param algorithm CryptoUtils.SIGN_MD5_RSA/SIGN_SHA256_RSA等
+     */
+    public byte[] sign(byte[] data, String algorithm) {
+        checkPrivate(true);
+        BoundedPool<Signature> pool = pool(algorithm);
+        Signature signature = borrow(pool, algorithm);
+        byte[] result = sign(signature, data);
+        pool.offer(signature);
+        return result;
+    }
+
+    /**
+     * 签名格式错误(如长度不符)时返回false
+     */
+    public boolean verify(byte[] data, byte[] sign, String algorithm) {
+        checkPrivate(false);
+        BoundedPool<Signature> pool = pool(algorithm);
+        Signature signature = borrow(pool, algorithm);
+        Boolean result = verify(signature, data, sign);
+        if (null == result) {
+            return false;
+        }
+        pool.offer(signature);
+        return result;
+    }
+
+    /**
+     * 并行签名，数据按parallelism的数倍分段，每段借用一个Signature顺序处理
+     *
+     * @param parallelism 并行度，不大于1时在当前线程执行
+     * @return 与data顺序一致的签名
+     */
+    public byte[][] signAll(List<byte[]> data, String algorithm, int parallelism) throws InterruptedException {
+        checkPrivate(true);
+        BoundedPool<Signature> pool = pool(algorithm);
+        byte[][] result = new byte[data.size()][];
+        forEachRange(data.size(), parallelism, (from, to) -> {
+            Signature signature = borrow(pool, algorithm);
+            for (int i = from; i < to; i++) {
+                result[i] = sign(signature, data.get(i));
+            }
+            pool.offer(signature);
+        });
+        return result;
+    }
+
+    /**
+     * 并行验签，分段方式同signAll
+     *
+     * @param signs 与data一一对应的签名
+     * @return 与data顺序一致的验签结果
+     */
+    public boolean[] verifyAll(List<byte[]> data, List<byte[]> signs, String algorithm, int parallelism) throws InterruptedException {
+        checkPrivate(false);
+        if (data.size() != signs.size()) {
+            throw new IllegalArgumentException("data size " + data.size() + " does not match signs size " + signs.size());
+        }
+        BoundedPool<Signature> pool = pool(algorithm);
+        boolean[] result = new boolean[data.size()];
+        forEachRange(data.size(), parallelism, (from, to) -> {
+            Signature signature = borrow(pool, algorithm);
+            for (int i = from; i < to; i++) {
+                Boolean valid = verify(signature, data.get(i), signs.get(i));
+                if (null == valid) {
+                    // 出错后状态不确定，换一个实例继续
+                    signature = borrow(pool, algorithm);
+                } else {
+                    result[i] = valid;
+                }
+            }
+            pool.offer(signature);
+        });
+        return result;
+    }
+
+    /**
+     * 公钥加密，RSA/ECB/PKCS1Padding，数据过长时原样抛出IllegalBlockSizeException
+     */
+    public byte[] encrypt(byte[] data) {
+        checkPrivate(false);
+        return doFinal(data, Cipher.ENCRYPT_MODE);
+    }
+
+    /**
+     * 私钥解密，RSA/ECB/PKCS1Padding，密文错误时原样抛出BadPaddingException/IllegalBlockSizeException
+     */
+    public byte[] decrypt(byte[] data) {
+        checkPrivate(true);
+        return doFinal(data, Cipher.DECRYPT_MODE);
+    }
+
+    /**
+     * 编码后密钥的SHA-256 hex
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public boolean isPrivate() {
+        return privateKey;
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    /**
+     * 异常不包装，调用方可以照旧捕获BadPaddingException
+     */
+    @SneakyThrows
+    private byte[] doFinal(byte[] data, int cipherMode) {
+        Cipher cipher = ciphers.poll();
+        if (null == cipher) {
+            cipher = Cipher.getInstance("RSA");
+            cipher.init(cipherMode, key);
+        }
+        byte[] result = cipher.doFinal(data);
+        ciphers.offer(cipher);
+        return result;
+    }
+
+    private BoundedPool<Signature> pool(String algorithm) {
+        BoundedPool<Signature> pool = signatures.get(algorithm);
+        if (null == pool) {
+            pool = signatures.computeIfAbsent(algorithm, k -> new BoundedPool<>());
+        }
+        return pool;
+    }
+
+    private Signature borrow(BoundedPool<Signature> pool, String algorithm) {
+        Signature signature = pool.poll();
+        if (null != signature) {
+            return signature;
+        }
+        try {
+            signature = Signature.getInstance(algorithm);
+            if (privateKey) {
+                signature.initSign((PrivateKey) key);
+            } else {
+                signature.initVerify((PublicKey) key);
+            }
+            return signature;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] sign(Signature signature, byte[] data) {
+        try {
+            signature.update(data);
+            return signature.sign();
+        } catch (SignatureException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return 验签结果，签名格式错误时返回null，此时signature不应再复用
+     */
+    private static Boolean verify(Signature signature, byte[] data, byte[] sign) {
+        try {
+            signature.update(data);
+            return signature.verify(sign);
+        } catch (SignatureException e) {
+            return null;
+        }
+    }
+
+    private void checkPrivate(boolean required) {
+        if (privateKey != required) {
+            throw new UnsupportedOperationException("operation requires a " + (required ? "private" : "public") + " key");
+        }
+    }
+
+    private static void forEachRange(int size, int parallelism, RangeTask task) throws InterruptedException {
+        if (parallelism <= 1 || size <= 1) {
+            task.run(0, size);
+            return;
+        }
+        // 分段数多于并行度，各线程处理速度不一时仍能均衡
+        int chunks = Math.min(size, parallelism * 4);
+        int chunkSize = (size + chunks - 1) / chunks;
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+            for (int from = 0; from < size; from += chunkSize) {
+                int start = from;
+                int end = Math.min(size, from + chunkSize);
+                tasks.add(forkJoinPool.submit(() -> task.run(start, end)));
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                try {
+                    t.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                }
+            }
+        } finally {
+            forkJoinPool.shutdownNow();
+        }
+    }
+
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+}
@@ -0,0 +1,243 @@
+package priv.zujool.crypto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.security.GeneralSecurityException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预生成RSA密钥对的池
+ * 后台线程把池填满到capacity，取走后剩余数量低于lowWaterMark时再补满
+ * 池空时在调用线程直接生成，不等待后台线程
+ * 线程安全，不再使用时应close以停止后台线程
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class RsaKeyPairPool implements Closeable {
+
+    private final int keySize;
+
+    private final int capacity;
+
+    private final int lowWaterMark;
+
+    private final BlockingQueue<KeyPair> pairs;
+
+    /**
+     * 已提交但未完成的后台生成任务数
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final ExecutorService generator;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder generated = new LongAdder();
+
+    private final LongAdder generateNanos = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile long maxGenerateNanos;
+
+    /**
+     * @param keySize          密钥长度，默认2048
+     * @param capacity         池容量，默认16
+     * @param lowWaterMark     剩余数量低于该值时补满，默认capacity的一半
+     * @param generatorThreads 后台生成线程数，默认1
+     */
+    @Builder
+    private RsaKeyPairPool(Integer keySize, Integer capacity, Integer lowWaterMark, Integer generatorThreads) {
+        this.keySize = null == keySize ? 2048 : keySize;
+        this.capacity = null == capacity ? 16 : capacity;
+        this.lowWaterMark = null == lowWaterMark ? this.capacity / 2 : lowWaterMark;
+        if (this.capacity <= 0 || this.lowWaterMark < 0 || this.lowWaterMark > this.capacity) {
+            throw new IllegalArgumentException("invalid capacity " + this.capacity + " or low water mark " + this.lowWaterMark);
+        }
+        try {
+            // 只校验keySize，不生成
+            KeyPairGenerator.getInstance("RSA").initialize(this.keySize);
+        } catch (GeneralSecurityException | InvalidParameterException e) {
+            throw new IllegalArgumentException("unsupported RSA key size " + this.keySize, e);
+        }
+        this.pairs = new ArrayBlockingQueue<>(this.capacity);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.generator = Executors.newFixedThreadPool(null == generatorThreads ? 1 : generatorThreads, r -> {
+            Thread thread = new Thread(r, "zujool-rsa-keygen-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        refill();
+    }
+
+    /**
+     * 取一个密钥对，池空时在当前线程生成
+     */
+    public KeyPair take() {
+        KeyPair pair = pairs.poll();
+        if (null != pair) {
+            hits.increment();
+        } else {
+            misses.increment();
+            pair = generate();
+        }
+        if (pairs.size() < lowWaterMark) {
+            refill();
+        }
+        return pair;
+    }
+
+    /**
+     * 取一个密钥对，格式同CryptoUtils.rsaKeyPairGenerate
+     *
+     * @return [Base64编码的X509公钥, Base64编码的PKCS8私钥]
+     */
+    public List<String> takeEncoded() {
+        return CryptoUtils.encodeKeyPair(take());
+    }
+
+    /**
+     * 当前池中的密钥对数量
+     */
+    public int getDepth() {
+        return pairs.size();
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    public Stats stats() {
+        long count = generated.sum();
+        return new Stats(keySize, pairs.size(), capacity, pending.get(), hits.sum(), misses.sum(), count, failures.sum(),
+                count == 0 ? 0 : generateNanos.sum() / count / 1e6, maxGenerateNanos / 1e6);
+    }
+
+    @Override
+    public void close() {
+        generator.shutdownNow();
+    }
+
+    /**
+     * 提交后台任务直到池中数量加上在途任务数达到capacity
+     */
+    private void refill() {
+        while (true) {
+            int inFlight = pending.get();
+            if (pairs.size() + inFlight >= capacity) {
+                return;
+            }
+            if (!pending.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            try {
+                generator.execute(() -> {
+                    try {
+                        pairs.offer(generate());
+                    } catch (RuntimeException e) {
+                        log.warn("==> Background RSA key pair generation failed", e);
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 已close
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private KeyPair generate() {
+        long start = System.nanoTime();
+        KeyPair pair;
+        try {
+            KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
+            keyPairGen.initialize(keySize, random);
+            pair = keyPairGen.generateKeyPair();
+        } catch (GeneralSecurityException | RuntimeException e) {
+            failures.increment();
+            throw new IllegalStateException("generate " + keySize + " bit RSA key pair failed", e);
+        }
+        long nanos = System.nanoTime() - start;
+        generated.increment();
+        generateNanos.add(nanos);
+        if (nanos > maxGenerateNanos) {
+            maxGenerateNanos = nanos;
+        }
+        return pair;
+    }
+
+    @Getter
+    @ToString
+    public static class Stats {
+
+        private final int keySize;
+
+        private final int depth;
+
+        private final int capacity;
+
+        /**
+         * 后台正在生成的数量
+         */
+        private final int pending;
+
+        /**
+         * 直接从池中取到的次数
+         */
+        private final long hits;
+
+        /**
+         * 池空在调用线程生成的次数
+         */
+        private final long misses;
+
+        /**
+         * 后台与调用线程生成的总数
+         */
+        private final long generated;
+
+        private final long failures;
+
+        private final double avgGenerateMillis;
+
+        private final double maxGenerateMillis;
+
+        Stats(int keySize, int depth, int capacity, int pending, long hits, long misses, long generated, long failures,
+              double avgGenerateMillis, double maxGenerateMillis) {
+            this.keySize = keySize;
+            this.depth = depth;
+            this.capacity = capacity;
+            this.pending = pending;
+            this.hits = hits;
+            this.misses = misses;
+            this.generated = generated;
+            this.failures = failures;
+            this.avgGenerateMillis = avgGenerateMillis;
+            this.maxGenerateMillis = maxGenerateMillis;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package priv.zujool.crypto;
+
+/**
+ * 将字符按UTF-8编码后分段写入目标，不生成完整的byte[]副本
+ * 编码结果与String.getBytes(UTF_8)一致，不成对的代理字符输出'?'
+ * 由各hash实现以字段持有，不作为公开类型的父类
+ *
+ * @author zujool
+ **/
+final class Utf8Sink {
+
+    private static final int SCRATCH_SIZE = 256;
+
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+
+    private final Target target;
+
+    Utf8Sink(Target target) {
+        this.target = target;
+    }
+
+    void write(CharSequence chars) {
+        byte[] buf = scratch;
+        int pos = 0;
+        for (int i = 0, length = chars.length(); i < length; i++) {
+            if (pos > SCRATCH_SIZE - 4) {
+                target.update(buf, 0, pos);
+                pos = 0;
+            }
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, chars.charAt(++i));
+                    buf[pos++] = (byte) (0xf0 | cp >> 18);
+                    buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    buf[pos++] = (byte) (0x80 | cp & 0x3f);
+                } else {
+                    buf[pos++] = '?';
+                }
+            } else {
+                buf[pos++] = (byte) (0xe0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        if (pos > 0) {
+            target.update(buf, 0, pos);
+        }
+    }
+
+    interface Target {
+
+        void update(byte[] bytes, int offset, int length);
+    }
+
+}
@@ -0,0 +1,385 @@
+package priv.zujool.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64，非加密hash，用于缓存key、分片路由等不需要抗碰撞攻击的场景，比MD5/SHA快一个数量级
+ * 静态方法为一次性计算，实例为流式计算，同样的字节与seed在两种方式下结果相同
+ * CharSequence按UTF-8编码计算，与对getBytes(UTF_8)计算的结果一致
+ * 实例不是线程安全的
+ *
+ * @author zujool
+ **/
+public final class XxHash64 {
+
+    static final long P1 = 0x9E3779B185EBCA87L;
+    static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    static final long P3 = 0x165667B19E3779F9L;
+    static final long P4 = 0x85EBCA77C2B2AE63L;
+    static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final BoundedPool<XxHash64> POOL = new BoundedPool<>();
+
+    private final byte[] buffer = new byte[32];
+
+    private final Utf8Sink utf8 = new Utf8Sink(this::update);
+
+    private long seed;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    private int bufferSize;
+
+    private long totalLength;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        reset(seed);
+    }
+
+    public static long hash(byte[] data) {
+        return hash(data, 0, data.length, 0);
+    }
+
+    public static long hash(byte[] data, long seed) {
+        return hash(data, 0, data.length, seed);
+    }
+
+    public static long hash(byte[] data, int offset, int length, long seed) {
+        int p = offset;
+        int end = offset + length;
+        long h;
+        if (length >= 32) {
+            long a1 = seed + P1 + P2;
+            long a2 = seed + P2;
+            long a3 = seed;
+            long a4 = seed - P1;
+            int limit = end - 32;
+            do {
+                a1 = round(a1, getLong(data, p));
+                a2 = round(a2, getLong(data, p + 8));
+                a3 = round(a3, getLong(data, p + 16));
+                a4 = round(a4, getLong(data, p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        h += length;
+        for (; p + 8 <= end; p += 8) {
+            h = mixLong(h, getLong(data, p));
+        }
+        if (p + 4 <= end) {
+            h = mixInt(h, getInt(data, p));
+            p += 4;
+        }
+        for (; p < end; p++) {
+            h = mixByte(h, data[p]);
+        }
+        return avalanche(h);
+    }
+
+    /**
+     * 对position到limit之间的数据计算，不改变buffer的position
+     */
+    public static long hash(ByteBuffer data, long seed) {
+        if (data.hasArray()) {
+            return hash(data.array(), data.arrayOffset() + data.position(), data.remaining(), seed);
+        }
+        boolean le = data.order() == ByteOrder.LITTLE_ENDIAN;
+        int p = data.position();
+        int end = data.limit();
+        int length = end - p;
+        long h;
+        if (length >= 32) {
+            long a1 = seed + P1 + P2;
+            long a2 = seed + P2;
+            long a3 = seed;
+            long a4 = seed - P1;
+            int limit = end - 32;
+            do {
+                a1 = round(a1, getLong(data, p, le));
+                a2 = round(a2, getLong(data, p + 8, le));
+                a3 = round(a3, getLong(data, p + 16, le));
+                a4 = round(a4, getLong(data, p + 24, le));
+                p += 32;
+            } while (p <= limit);
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        h += length;
+        for (; p + 8 <= end; p += 8) {
+            h = mixLong(h, getLong(data, p, le));
+        }
+        if (p + 4 <= end) {
+            h = mixInt(h, le ? data.getInt(p) : Integer.reverseBytes(data.getInt(p)));
+            p += 4;
+        }
+        for (; p < end; p++) {
+            h = mixByte(h, data.get(p));
+        }
+        return avalanche(h);
+    }
+
+    /**
+     * 按UTF-8编码计算，不分配内存；纯ASCII时直接按字符读取，否则复用池中的流式实例
+     */
+    public static long hash(CharSequence data, long seed) {
+        if (isAscii(data)) {
+            return hashAscii(data, seed);
+        }
+        XxHash64 hasher = POOL.poll();
+        if (null == hasher) {
+            hasher = new XxHash64(seed);
+        } else {
+            hasher.reset(seed);
+        }
+        hasher.update(data);
+        long value = hasher.getValue();
+        POOL.offer(hasher);
+        return value;
+    }
+
+    private static long hashAscii(CharSequence data, long seed) {
+        int p = 0;
+        int end = data.length();
+        long h;
+        if (end >= 32) {
+            long a1 = seed + P1 + P2;
+            long a2 = seed + P2;
+            long a3 = seed;
+            long a4 = seed - P1;
+            int limit = end - 32;
+            do {
+                a1 = round(a1, getLong(data, p));
+                a2 = round(a2, getLong(data, p + 8));
+                a3 = round(a3, getLong(data, p + 16));
+                a4 = round(a4, getLong(data, p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        h += end;
+        for (; p + 8 <= end; p += 8) {
+            h = mixLong(h, getLong(data, p));
+        }
+        if (p + 4 <= end) {
+            h = mixInt(h, getInt(data, p));
+            p += 4;
+        }
+        for (; p < end; p++) {
+            h = mixByte(h, (byte) data.charAt(p));
+        }
+        return avalanche(h);
+    }
+
+    public XxHash64 reset(long seed) {
+        this.seed = seed;
+        this.v1 = seed + P1 + P2;
+        this.v2 = seed + P2;
+        this.v3 = seed;
+        this.v4 = seed - P1;
+        this.bufferSize = 0;
+        this.totalLength = 0;
+        return this;
+    }
+
+    public XxHash64 reset() {
+        return reset(seed);
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        totalLength += length;
+        int p = offset;
+        int end = offset + length;
+        if (bufferSize > 0) {
+            int n = Math.min(32 - bufferSize, length);
+            System.arraycopy(data, p, buffer, bufferSize, n);
+            bufferSize += n;
+            p += n;
+            if (bufferSize < 32) {
+                return;
+            }
+            consumeStripe(buffer, 0);
+            bufferSize = 0;
+        }
+        for (; p + 32 <= end; p += 32) {
+            consumeStripe(data, p);
+        }
+        if (p < end) {
+            System.arraycopy(data, p, buffer, 0, end - p);
+            bufferSize = end - p;
+        }
+    }
+
+    public void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    /**
+     * 读完buffer中剩余的数据
+     */
+    public void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+        while (data.hasRemaining()) {
+            int n = Math.min(32 - bufferSize, data.remaining());
+            data.get(buffer, bufferSize, n);
+            bufferSize += n;
+            totalLength += n;
+            if (bufferSize == 32) {
+                consumeStripe(buffer, 0);
+                bufferSize = 0;
+            }
+        }
+    }
+
+    /**
+     * 按UTF-8编码追加
+     */
+    public void update(CharSequence data) {
+        utf8.write(data);
+    }
+
+    /**
+     * 当前已追加数据的hash，不影响后续追加
+     */
+    public long getValue() {
+        long h;
+        if (totalLength >= 32) {
+            h = converge(v1, v2, v3, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += totalLength;
+        int p = 0;
+        for (; p + 8 <= bufferSize; p += 8) {
+            h = mixLong(h, getLong(buffer, p));
+        }
+        if (p + 4 <= bufferSize) {
+            h = mixInt(h, getInt(buffer, p));
+            p += 4;
+        }
+        for (; p < bufferSize; p++) {
+            h = mixByte(h, buffer[p]);
+        }
+        return avalanche(h);
+    }
+
+    private void consumeStripe(byte[] data, int p) {
+        v1 = round(v1, getLong(data, p));
+        v2 = round(v2, getLong(data, p + 8));
+        v3 = round(v3, getLong(data, p + 16));
+        v4 = round(v4, getLong(data, p + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, long v) {
+        acc ^= round(0, v);
+        return acc * P1 + P4;
+    }
+
+    private static long converge(long a1, long a2, long a3, long a4) {
+        long h = Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7) + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+        h = merge(h, a1);
+        h = merge(h, a2);
+        h = merge(h, a3);
+        return merge(h, a4);
+    }
+
+    private static long mixLong(long h, long k) {
+        h ^= round(0, k);
+        return Long.rotateLeft(h, 27) * P1 + P4;
+    }
+
+    private static long mixInt(long h, int k) {
+        h ^= (k & 0xFFFFFFFFL) * P1;
+        return Long.rotateLeft(h, 23) * P2 + P3;
+    }
+
+    private static long mixByte(long h, byte b) {
+        h ^= (b & 0xFF) * P5;
+        return Long.rotateLeft(h, 11) * P1;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    static long getLong(byte[] b, int i) {
+        return (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    static int getInt(byte[] b, int i) {
+        return (b[i] & 0xFF)
+                | (b[i + 1] & 0xFF) << 8
+                | (b[i + 2] & 0xFF) << 16
+                | (b[i + 3] & 0xFF) << 24;
+    }
+
+    static boolean isAscii(CharSequence s) {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ASCII字符串中从i开始的8个字符按小端组成long
+     */
+    static long getLong(CharSequence s, int i) {
+        return (long) s.charAt(i)
+                | (long) s.charAt(i + 1) << 8
+                | (long) s.charAt(i + 2) << 16
+                | (long) s.charAt(i + 3) << 24
+                | (long) s.charAt(i + 4) << 32
+                | (long) s.charAt(i + 5) << 40
+                | (long) s.charAt(i + 6) << 48
+                | (long) s.charAt(i + 7) << 56;
+    }
+
+    static int getInt(CharSequence s, int i) {
+        return s.charAt(i)
+                | s.charAt(i + 1) << 8
+                | s.charAt(i + 2) << 16
+                | s.charAt(i + 3) << 24;
+    }
+
+    static long getLong(ByteBuffer b, int i, boolean littleEndian) {
+        return littleEndian ? b.getLong(i) : Long.reverseBytes(b.getLong(i));
+    }
+
+}
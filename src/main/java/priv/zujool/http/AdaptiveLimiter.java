@@ -0,0 +1,73 @@
+package priv.zujool.http;
+
+/**
+ * 单个host的AIMD并发上限
+ * 请求成功且延迟不超过阈值时上限加1/limit(约每轮加1)，失败或超过延迟阈值时按比例缩小
+ *
+ * @author zujool
+ **/
+public class AdaptiveLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdMillis;
+
+    private final double backoffRatio;
+
+    private double limit;
+
+    private int inFlight;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis, double backoffRatio) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * @return 是否取得名额，取得后必须调用release或releaseIgnored
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 释放名额并根据结果调整上限
+     *
+     * @param latencyMillis 请求耗时
+     * @param dropped       是否失败(超时，连接错误，5xx)
+     */
+    public synchronized void release(long latencyMillis, boolean dropped) {
+        inFlight--;
+        if (dropped || latencyMillis > latencyThresholdMillis) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlight * 2 >= (int) limit) {
+            // 只在接近上限时增长，避免空闲时上限无限膨胀
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * 释放名额，不调整上限
+     */
+    public synchronized void releaseIgnored() {
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+}
@@ -0,0 +1,261 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 批量请求执行器
+ * 基于异步API，在全局并发上限与单host并发上限内执行，多个host之间轮询调度避免单个host独占并发
+ * 注意共享Dispatcher自身的maxRequests/maxRequestsPerHost同样生效
+ * 返回的future被取消或execute等待被中断时，不再启动剩余请求并取消执行中的Call
+ *
+ * @author zujool
+ **/
+public class BatchExecutor {
+
+    private final OkHttpClient client;
+
+    private final int maxConcurrency;
+
+    private final int maxPerHost;
+
+    public BatchExecutor(OkHttpClient client, int maxConcurrency, int maxPerHost) {
+        if (maxConcurrency < 1 || maxPerHost < 1) {
+            throw new IllegalArgumentException("concurrency limits must be positive");
+        }
+        this.client = client;
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * 阻塞直到所有请求完成
+     *
+     * @param specs 请求描述
+     * @return 与输入顺序一致的结果
+     * @throws InterruptedException 等待被中断，此时剩余请求被取消
+     */
+    public List<BatchResult> execute(List<RequestSpec> specs) throws InterruptedException {
+        CompletableFuture<List<BatchResult>> future = executeAsync(specs);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return 取消后不再启动剩余请求，并取消执行中的Call
+     */
+    public CompletableFuture<List<BatchResult>> executeAsync(List<RequestSpec> specs) {
+        if (specs.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        Run run = new Run(specs);
+        run.future.whenComplete((results, e) -> {
+            if (run.future.isCancelled()) {
+                run.cancel();
+            }
+        });
+        run.pump();
+        return run.future;
+    }
+
+    private class Run {
+
+        private final List<RequestSpec> specs;
+
+        private final BatchResult[] results;
+
+        private final CompletableFuture<List<BatchResult>> future = new CompletableFuture<>();
+
+        /**
+         * host -> 待执行的下标，LinkedHashMap保证轮询顺序稳定
+         */
+        private final Map<String, Deque<Integer>> pending = new LinkedHashMap<>();
+
+        private final Map<String, Integer> hostInFlight = new HashMap<>();
+
+        /**
+         * 下标 -> 执行中的调用，取消时逐个cancel
+         */
+        private final Map<Integer, CompletableFuture<String>> calls = new HashMap<>();
+
+        private boolean cancelled;
+
+        private int inFlight;
+
+        private int completed;
+
+        /**
+         * 是否有线程正在pump循环中启动调用
+         */
+        private boolean pumping;
+
+        private boolean repump;
+
+        Run(List<RequestSpec> specs) {
+            this.specs = specs;
+            this.results = new BatchResult[specs.size()];
+            for (int i = 0; i < specs.size(); i++) {
+                String host = hostOf(specs.get(i));
+                pending.computeIfAbsent(host, h -> new ArrayDeque<>()).add(i);
+            }
+        }
+
+        /**
+         * 同步失败的调用会在start中直接回调finish再进入pump，
+         * 此时只标记repump，由最外层的pump循环继续启动，避免递归导致栈溢出
+         */
+        void pump() {
+            synchronized (this) {
+                if (pumping) {
+                    repump = true;
+                    return;
+                }
+                pumping = true;
+            }
+            while (true) {
+                List<Integer> toStart = new ArrayList<>();
+                synchronized (this) {
+                    boolean progressed = true;
+                    while (progressed && inFlight < maxConcurrency && !pending.isEmpty()) {
+                        progressed = false;
+                        Iterator<Map.Entry<String, Deque<Integer>>> it = pending.entrySet().iterator();
+                        while (it.hasNext() && inFlight < maxConcurrency) {
+                            Map.Entry<String, Deque<Integer>> entry = it.next();
+                            int running = hostInFlight.getOrDefault(entry.getKey(), 0);
+                            if (running >= maxPerHost) {
+                                continue;
+                            }
+                            toStart.add(entry.getValue().poll());
+                            hostInFlight.put(entry.getKey(), running + 1);
+                            inFlight++;
+                            progressed = true;
+                            if (entry.getValue().isEmpty()) {
+                                it.remove();
+                            }
+                        }
+                    }
+                }
+                for (Integer index : toStart) {
+                    start(index);
+                }
+                synchronized (this) {
+                    if (!repump) {
+                        pumping = false;
+                        return;
+                    }
+                    repump = false;
+                }
+            }
+        }
+
+        private void start(int index) {
+            RequestSpec spec = specs.get(index);
+            CompletableFuture<String> call;
+            try {
+                Request request = spec.toRequest();
+                call = OkHttpUtils.processCallAsync(client, request, spec.getBody());
+            } catch (RuntimeException e) {
+                call = new CompletableFuture<>();
+                call.completeExceptionally(e);
+            }
+            boolean cancelCall;
+            synchronized (this) {
+                cancelCall = cancelled;
+                if (!cancelCall) {
+                    calls.put(index, call);
+                }
+            }
+            if (cancelCall) {
+                // 在pump取出之后、启动之前被取消
+                call.cancel(true);
+            }
+            call.whenComplete((body, e) -> finish(index, spec, body, e));
+        }
+
+        void cancel() {
+            List<CompletableFuture<String>> running;
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+                running = new ArrayList<>(calls.values());
+                calls.clear();
+            }
+            for (CompletableFuture<String> call : running) {
+                call.cancel(true);
+            }
+        }
+
+        private void finish(int index, RequestSpec spec, String body, Throwable error) {
+            boolean done;
+            synchronized (this) {
+                calls.remove(index);
+                results[index] = new BatchResult(index, spec, body, error);
+                String host = hostOf(spec);
+                hostInFlight.merge(host, -1, Integer::sum);
+                inFlight--;
+                completed++;
+                done = completed == results.length;
+            }
+            if (done) {
+                future.complete(Collections.unmodifiableList(Arrays.asList(results)));
+            } else {
+                pump();
+            }
+        }
+    }
+
+    private static String hostOf(RequestSpec spec) {
+        HttpUrl url = HttpUrl.parse(spec.getUrl());
+        return null == url ? "" : url.host() + ":" + url.port();
+    }
+
+    @Getter
+    @ToString
+    public static class BatchResult {
+
+        /**
+         * 在输入列表中的下标
+         */
+        private final int index;
+
+        private final RequestSpec spec;
+
+        private final String body;
+
+        private final Throwable error;
+
+        BatchResult(int index, RequestSpec spec, String body, Throwable error) {
+            this.index = index;
+            this.spec = spec;
+            this.body = body;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return null == error;
+        }
+    }
+
+}
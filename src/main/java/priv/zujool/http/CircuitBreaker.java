@@ -0,0 +1,116 @@
+package priv.zujool.http;
+
+/**
+ * 单个host的熔断器
+ * CLOSED下连续失败达到阈值进入OPEN，OPEN持续openMillis后进入HALF_OPEN放行一个探测请求，
+ * 探测成功回到CLOSED，失败重新OPEN
+ * tryAcquire返回的许可需原样传给onSuccess/onFailure/onIgnored，HALF_OPEN下只有探测请求自身的结果改变状态
+ *
+ * @author zujool
+ **/
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * tryAcquire拒绝时的返回值
+     */
+    public static final long REJECTED = -1;
+
+    /**
+     * CLOSED下放行的普通请求的许可
+     */
+    private static final long NORMAL = 0;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    /**
+     * 最近一次放行的探测请求的许可，从1开始递增
+     */
+    private long probePermit;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return 许可，拒绝时返回REJECTED
+     */
+    public synchronized long tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return NORMAL;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openMillis) {
+                    return REJECTED;
+                }
+                state = State.HALF_OPEN;
+                return startProbe();
+            default:
+                return probing ? REJECTED : startProbe();
+        }
+    }
+
+    /**
+     * OPEN下以及HALF_OPEN下非探测请求的成功被忽略，它们来自熔断前发出的请求，不能跳过冷却期与半开探测
+     */
+    public synchronized void onSuccess(long permit) {
+        if (state == State.OPEN || (state == State.HALF_OPEN && !isProbe(permit))) {
+            return;
+        }
+        consecutiveFailures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * HALF_OPEN下只有探测请求的失败重新OPEN，OPEN下的失败不延长冷却期
+     */
+    public synchronized void onFailure(long permit) {
+        if (state == State.OPEN || (state == State.HALF_OPEN && !isProbe(permit))) {
+            return;
+        }
+        probing = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 放行后未产生结果(如请求被取消)，探测请求释放探测名额
+     */
+    public synchronized void onIgnored(long permit) {
+        if (state == State.HALF_OPEN && isProbe(permit)) {
+            probing = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private long startProbe() {
+        probing = true;
+        return ++probePermit;
+    }
+
+    private boolean isProbe(long permit) {
+        return probing && permit == probePermit;
+    }
+
+}
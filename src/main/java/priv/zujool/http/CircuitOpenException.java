@@ -0,0 +1,16 @@
+package priv.zujool.http;
+
+import java.io.IOException;
+
+/**
+ * host熔断期间快速失败，请求未发出
+ *
+ * @author zujool
+ **/
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String host) {
+        super("Circuit open for host " + host);
+    }
+
+}
@@ -0,0 +1,119 @@
+package priv.zujool.http;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import lombok.ToString;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * client配置档，同一profile下的client共享一个ConnectionPool
+ *
+ * @author zujool
+ **/
+@Getter
+@ToString
+@Builder(toBuilder = true)
+public class ClientProfile {
+
+    /**
+     * profile名称，作为注册表中的key
+     */
+    private final String name;
+
+    /**
+     * 连接池最大空闲连接数
+     */
+    @Builder.Default
+    private final int maxIdleConnections = 5;
+
+    /**
+     * 空闲连接保活时间，单位毫秒
+     */
+    @Builder.Default
+    private final long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * 追加到client上的应用拦截器
+     */
+    @Singular
+    private final List<Interceptor> interceptors;
+
+    /**
+     * 追加到client上的网络拦截器
+     */
+    @Singular
+    private final List<Interceptor> networkInterceptors;
+
+    /**
+     * 事件监听工厂，如HttpMetrics，为null时使用OkHttp默认
+     */
+    private final EventListener.Factory eventListenerFactory;
+
+    /**
+     * 协商的协议列表，为null时使用OkHttp默认(HTTP/2优先，HTTP/1.1兜底)
+     */
+    private final List<Protocol> protocols;
+
+    /**
+     * HTTP/2 ping间隔，单位毫秒，0表示不发送
+     */
+    private final long pingIntervalMillis;
+
+    /**
+     * 单host异步并发上限，大于0时该profile使用独立的Dispatcher(共享线程池)
+     * 只限制经Dispatcher排队的异步请求(enqueue)，同步execute的请求不受限制；
+     * HTTP/2下同一host的请求复用一个连接，该值限制的是异步请求在该连接上的并发stream数
+     */
+    private final int maxRequestsPerHost;
+
+    /**
+     * 域名解析，如DnsCache，为null时使用OkHttp默认(每次建连都同步解析)
+     */
+    private final Dns dns;
+
+    public static ClientProfile of(String name) {
+        return ClientProfile.builder().name(name).build();
+    }
+
+    /**
+     * TLS上通过ALPN协商HTTP/2，不支持时回退HTTP/1.1
+     *
+     * @param name               profile名称
+     * @param maxRequestsPerHost 单host异步请求并发上限，同步请求不受限制
+     * @return profile
+     */
+    public static ClientProfile http2(String name, int maxRequestsPerHost) {
+        return ClientProfile.builder()
+                .name(name)
+                .protocols(Collections.unmodifiableList(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)))
+                .pingIntervalMillis(TimeUnit.SECONDS.toMillis(30))
+                .maxRequestsPerHost(maxRequestsPerHost)
+                .build();
+    }
+
+    /**
+     * 明文HTTP/2(h2c prior knowledge)，只能用于确定支持h2c的内部服务，不支持https
+     *
+     * @param name               profile名称
+     * @param maxRequestsPerHost 单host异步请求并发上限，同步请求不受限制
+     * @return profile
+     */
+    public static ClientProfile h2cPriorKnowledge(String name, int maxRequestsPerHost) {
+        return ClientProfile.builder()
+                .name(name)
+                .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+                .pingIntervalMillis(TimeUnit.SECONDS.toMillis(30))
+                .maxRequestsPerHost(maxRequestsPerHost)
+                .build();
+    }
+
+}
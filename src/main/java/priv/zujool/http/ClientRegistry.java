@@ -0,0 +1,252 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.net.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * OkHttpClient注册表
+ * 按(profile, 超时, 代理)缓存共享的client，避免每次请求都newBuilder().build()
+ * client本身不可变且线程安全，可被任意线程复用
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class ClientRegistry {
+
+    public static final String DEFAULT_PROFILE = "default";
+
+    private final OkHttpClient baseClient;
+
+    private final ConcurrentMap<String, ProfileHolder> profiles = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ClientKey, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 每次register递增，写入ProfileHolder与ClientKey，旧版本profile构建的client不会被新的get命中
+     */
+    private long generation;
+
+    public ClientRegistry(OkHttpClient baseClient) {
+        this.baseClient = baseClient;
+        register(ClientProfile.of(DEFAULT_PROFILE));
+    }
+
+    /**
+     * 注册或替换profile，替换时丢弃该profile下已缓存的client
+     * 连接池参数未变时沿用原连接池，已建立(如预热)的连接与统计保留；参数变化时新建连接池并关闭旧池中的空闲连接
+     *
+     * @param profile profile
+     */
+    public synchronized void register(ClientProfile profile) {
+        if (null == profile || null == profile.getName()) {
+            throw new IllegalArgumentException("profile name can not be null");
+        }
+        ProfileHolder old = profiles.get(profile.getName());
+        ProfileHolder holder = null == old
+                ? new ProfileHolder(profile, ++generation, baseClient.dispatcher())
+                : old.replace(profile, ++generation, baseClient.dispatcher());
+        profiles.put(profile.getName(), holder);
+        if (null != old) {
+            // 先发布新holder再清理，清理后并发get插入的旧版本client也会在get中被移除
+            clients.keySet().removeIf(key -> key.profile.equals(profile.getName()) && key.generation != holder.generation);
+            if (old.pool != holder.pool) {
+                old.pool.evictAll();
+            }
+            log.info("==> Client profile [{}] replaced, connection pool {}", profile.getName(),
+                    old.pool == holder.pool ? "kept" : "rebuilt");
+        }
+    }
+
+    /**
+     * 基于已注册的profile修改后重新注册
+     *
+     * @param name     profile名称
+     * @param modifier 修改逻辑
+     */
+    public synchronized void update(String name, UnaryOperator<ClientProfile.ClientProfileBuilder> modifier) {
+        register(modifier.apply(profile(name).toBuilder()).build());
+    }
+
+    public ClientProfile profile(String name) {
+        return holder(name).profile;
+    }
+
+    public OkHttpClient get(long connTimeout, long writeTimeout, long readTimeout, Proxy proxy) {
+        return get(DEFAULT_PROFILE, connTimeout, writeTimeout, readTimeout, proxy);
+    }
+
+    /**
+     * 获取共享client，超时单位毫秒
+     *
+     * @param profile      profile名称
+     * @param connTimeout  connTimeout
+     * @param writeTimeout writeTimeout
+     * @param readTimeout  readTimeout
+     * @param proxy        proxy
+     * @return OkHttpClient
+     */
+    public OkHttpClient get(String profile, long connTimeout, long writeTimeout, long readTimeout, Proxy proxy) {
+        ProfileHolder holder = holder(profile);
+        ClientKey key = new ClientKey(profile, holder.generation, connTimeout, writeTimeout, readTimeout, proxy);
+        OkHttpClient client = clients.get(key);
+        if (null != client) {
+            holder.hits.increment();
+            return client;
+        }
+        client = clients.computeIfAbsent(key, k -> {
+            holder.misses.increment();
+            return build(holder, k);
+        });
+        if (profiles.get(profile) != holder) {
+            // 构建期间profile被替换，本次仍使用旧client，但不留在缓存中
+            clients.remove(key, client);
+        }
+        return client;
+    }
+
+    public PoolStats stats(String profile) {
+        ProfileHolder holder = holder(profile);
+        return new PoolStats(profile, holder.hits.sum(), holder.misses.sum(),
+                holder.pool.connectionCount(), holder.pool.idleConnectionCount());
+    }
+
+    private OkHttpClient build(ProfileHolder holder, ClientKey key) {
+        OkHttpClient.Builder builder = baseClient.newBuilder();
+        builder.connectionPool(holder.pool);
+        builder.interceptors().addAll(holder.profile.getInterceptors());
+        builder.networkInterceptors().addAll(holder.profile.getNetworkInterceptors());
+        if (null != holder.profile.getEventListenerFactory()) {
+            builder.eventListenerFactory(holder.profile.getEventListenerFactory());
+        }
+        if (null != holder.profile.getProtocols()) {
+            builder.protocols(holder.profile.getProtocols());
+        }
+        if (holder.profile.getPingIntervalMillis() > 0) {
+            builder.pingInterval(holder.profile.getPingIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (null != holder.profile.getDns()) {
+            builder.dns(holder.profile.getDns());
+        }
+        builder.dispatcher(holder.dispatcher);
+        builder.connectTimeout(key.connTimeout, TimeUnit.MILLISECONDS);
+        builder.writeTimeout(key.writeTimeout, TimeUnit.MILLISECONDS);
+        builder.readTimeout(key.readTimeout, TimeUnit.MILLISECONDS);
+        if (null != key.proxy) {
+            builder.proxy(key.proxy);
+        }
+        return builder.build();
+    }
+
+    private ProfileHolder holder(String name) {
+        ProfileHolder holder = profiles.get(name);
+        if (null == holder) {
+            throw new IllegalArgumentException("client profile not registered: " + name);
+        }
+        return holder;
+    }
+
+    private static class ProfileHolder {
+
+        private final ClientProfile profile;
+
+        private final long generation;
+
+        private final ConnectionPool pool;
+
+        private final Dispatcher dispatcher;
+
+        private final LongAdder hits;
+
+        private final LongAdder misses;
+
+        ProfileHolder(ClientProfile profile, long generation, Dispatcher shared) {
+            this(profile, generation, newPool(profile), newDispatcher(profile, shared), new LongAdder(), new LongAdder());
+        }
+
+        private ProfileHolder(ClientProfile profile, long generation, ConnectionPool pool, Dispatcher dispatcher, LongAdder hits, LongAdder misses) {
+            this.profile = profile;
+            this.generation = generation;
+            this.pool = pool;
+            this.dispatcher = dispatcher;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        /**
+         * 替换profile，连接池与Dispatcher的参数未变时沿用原实例，统计累加
+         */
+        ProfileHolder replace(ClientProfile next, long nextGeneration, Dispatcher shared) {
+            boolean samePool = next.getMaxIdleConnections() == profile.getMaxIdleConnections()
+                    && next.getKeepAliveMillis() == profile.getKeepAliveMillis();
+            boolean sameDispatcher = next.getMaxRequestsPerHost() == profile.getMaxRequestsPerHost();
+            return new ProfileHolder(next, nextGeneration, samePool ? pool : newPool(next),
+                    sameDispatcher ? dispatcher : newDispatcher(next, shared), hits, misses);
+        }
+
+        private static ConnectionPool newPool(ClientProfile profile) {
+            return new ConnectionPool(profile.getMaxIdleConnections(), profile.getKeepAliveMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private static Dispatcher newDispatcher(ClientProfile profile, Dispatcher shared) {
+            if (profile.getMaxRequestsPerHost() <= 0) {
+                return shared;
+            }
+            Dispatcher dispatcher = new Dispatcher(shared.executorService());
+            dispatcher.setMaxRequests(Math.max(shared.getMaxRequests(), profile.getMaxRequestsPerHost()));
+            dispatcher.setMaxRequestsPerHost(profile.getMaxRequestsPerHost());
+            return dispatcher;
+        }
+    }
+
+    @Value
+    private static class ClientKey {
+        String profile;
+        long generation;
+        long connTimeout;
+        long writeTimeout;
+        long readTimeout;
+        Proxy proxy;
+    }
+
+    @Getter
+    @ToString
+    public static class PoolStats {
+
+        private final String profile;
+
+        /**
+         * 命中已缓存client的次数
+         */
+        private final long clientHits;
+
+        /**
+         * 新建client的次数
+         */
+        private final long clientMisses;
+
+        private final int connectionCount;
+
+        private final int idleConnectionCount;
+
+        PoolStats(String profile, long clientHits, long clientMisses, int connectionCount, int idleConnectionCount) {
+            this.profile = profile;
+            this.clientHits = clientHits;
+            this.clientMisses = clientMisses;
+            this.connectionCount = connectionCount;
+            this.idleConnectionCount = idleConnectionCount;
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 请求体压缩与响应解压拦截器
+ * 长度不小于阈值的请求体按gzip或deflate流式压缩并设置Content-Encoding；
+ * 同时声明Accept-Encoding: gzip, deflate，在读取时流式解压响应；与OkHttp的BridgeInterceptor一致，
+ * 带Range的请求不声明也不解压，否则服务端会返回压缩后内容的字节区间，无法用于续传与分段下载
+ * 统计请求/响应的线上字节数与原始字节数
+ *
+ * @author zujool
+ **/
+public class CompressionInterceptor implements Interceptor {
+
+    public enum Encoding {
+        GZIP("gzip"), DEFLATE("deflate");
+
+        private final String value;
+
+        Encoding(String value) {
+            this.value = value;
+        }
+    }
+
+    private final Encoding encoding;
+
+    private final long minBytes;
+
+    /**
+     * 生效的host，为空表示全部
+     */
+    private final Set<String> hosts;
+
+    private final LongAdder requestsCompressed = new LongAdder();
+
+    private final LongAdder requestLogicalBytes = new LongAdder();
+
+    private final LongAdder requestWireBytes = new LongAdder();
+
+    private final LongAdder responsesDecoded = new LongAdder();
+
+    private final LongAdder responseWireBytes = new LongAdder();
+
+    private final LongAdder responseLogicalBytes = new LongAdder();
+
+    public CompressionInterceptor(Encoding encoding, long minBytes, String... hosts) {
+        this.encoding = encoding;
+        this.minBytes = minBytes;
+        this.hosts = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(hosts)));
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!hosts.isEmpty() && !hosts.contains(request.url().host())) {
+            return chain.proceed(request);
+        }
+        Request.Builder builder = request.newBuilder();
+        RequestBody body = request.body();
+        if (null != body && null == request.header("Content-Encoding") && body.contentLength() >= minBytes) {
+            requestsCompressed.increment();
+            requestLogicalBytes.add(body.contentLength());
+            builder.header("Content-Encoding", encoding.value)
+                    .method(request.method(), new CompressedBody(body));
+        }
+        boolean decode = null == request.header("Accept-Encoding") && null == request.header("Range");
+        if (decode) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+        Response response = chain.proceed(builder.build());
+        return decode ? decode(response) : response;
+    }
+
+    private Response decode(Response response) {
+        String contentEncoding = response.header("Content-Encoding");
+        ResponseBody body = response.body();
+        if (null == contentEncoding || null == body || "HEAD".equals(response.request().method())
+                || response.code() == 204 || response.code() == 304 || body.contentLength() == 0) {
+            return response;
+        }
+        Source wire = new CountingSource(body.source(), responseWireBytes);
+        Source decoded;
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            decoded = new GzipSource(wire);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            decoded = new InflaterSource(wire, new Inflater());
+        } else {
+            return response;
+        }
+        responsesDecoded.increment();
+        MediaType contentType = body.contentType();
+        ResponseBody decodedBody = ResponseBody.create(Okio.buffer(new CountingSource(decoded, responseLogicalBytes)), contentType, -1);
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(decodedBody)
+                .build();
+    }
+
+    public Stats stats() {
+        return new Stats(requestsCompressed.sum(), requestLogicalBytes.sum(), requestWireBytes.sum(),
+                responsesDecoded.sum(), responseLogicalBytes.sum(), responseWireBytes.sum());
+    }
+
+    /**
+     * 流式压缩，长度未知，按chunked发送
+     */
+    private class CompressedBody extends RequestBody {
+
+        private final RequestBody delegate;
+
+        CompressedBody(RequestBody delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Sink wire = new CountingSink(sink, requestWireBytes);
+            Sink compressed = encoding == Encoding.GZIP ? new GzipSink(wire) : new DeflaterSink(wire, new Deflater());
+            try (BufferedSink compressedSink = Okio.buffer(compressed)) {
+                delegate.writeTo(compressedSink);
+            }
+        }
+    }
+
+    private static class CountingSource extends ForwardingSource {
+
+        private final LongAdder counter;
+
+        CountingSource(Source delegate, LongAdder counter) {
+            super(delegate);
+            this.counter = counter;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                counter.add(read);
+            }
+            return read;
+        }
+    }
+
+    private static class CountingSink extends ForwardingSink {
+
+        private final LongAdder counter;
+
+        CountingSink(Sink delegate, LongAdder counter) {
+            super(delegate);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            counter.add(byteCount);
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Stats {
+
+        private final long requestsCompressed;
+
+        private final long requestLogicalBytes;
+
+        private final long requestWireBytes;
+
+        private final long responsesDecoded;
+
+        private final long responseLogicalBytes;
+
+        private final long responseWireBytes;
+
+        Stats(long requestsCompressed, long requestLogicalBytes, long requestWireBytes,
+              long responsesDecoded, long responseLogicalBytes, long responseWireBytes) {
+            this.requestsCompressed = requestsCompressed;
+            this.requestLogicalBytes = requestLogicalBytes;
+            this.requestWireBytes = requestWireBytes;
+            this.responsesDecoded = responsesDecoded;
+            this.responseLogicalBytes = responseLogicalBytes;
+            this.responseWireBytes = responseWireBytes;
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package priv.zujool.http;
+
+import java.io.IOException;
+
+/**
+ * host在途请求数达到自适应上限，请求未发出
+ *
+ * @author zujool
+ **/
+public class ConcurrencyLimitException extends IOException {
+
+    public ConcurrencyLimitException(String host, int limit) {
+        super("Concurrency limit " + limit + " reached for host " + host);
+    }
+
+}
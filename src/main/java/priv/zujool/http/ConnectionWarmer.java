@@ -0,0 +1,208 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 启动预热：预解析域名，并对每个host并发发出HEAD请求建好TCP/TLS连接放入连接池
+ * 同一host的请求在全部拿到响应后才一起释放，HTTP/1.1下因此会建立connectionsPerHost个不同的连接
+ * HTTP/2下同一host只需要一个连接，多余的请求会复用该连接
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class ConnectionWarmer {
+
+    private final OkHttpClient client;
+
+    private final int connectionsPerHost;
+
+    public ConnectionWarmer(OkHttpClient client, int connectionsPerHost) {
+        if (connectionsPerHost <= 0) {
+            throw new IllegalArgumentException("connectionsPerHost must be positive");
+        }
+        this.client = client;
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    /**
+     * 预热，各host并行进行，单个host失败不影响其他host
+     *
+     * @param urls 需要预热的服务地址，如https://api.example.com，需包含scheme以区分是否建立TLS
+     * @return 预热报告
+     */
+    public WarmupReport warmUp(Collection<String> urls) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+        try {
+            List<Future<HostWarmup>> futures = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                futures.add(executor.submit(() -> warmUpHost(url, executor)));
+            }
+            List<HostWarmup> hosts = new ArrayList<>(futures.size());
+            for (Future<HostWarmup> future : futures) {
+                try {
+                    hosts.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            WarmupReport report = new WarmupReport(Collections.unmodifiableList(hosts), System.nanoTime() - start,
+                    client.connectionPool().connectionCount());
+            log.info("==> Warmup finished in {}ms, {} pooled connections", report.getMillis(), report.getPooledConnections());
+            return report;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private HostWarmup warmUpHost(String url, ExecutorService executor) throws InterruptedException {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (null == httpUrl) {
+            return new HostWarmup(url, 0, 0, 0, "invalid url");
+        }
+        long resolveStart = System.nanoTime();
+        try {
+            client.dns().lookup(httpUrl.host());
+        } catch (UnknownHostException e) {
+            log.warn("==> Warmup [{}] resolve failed", url, e);
+            return new HostWarmup(url, System.nanoTime() - resolveStart, 0, 0, e.toString());
+        }
+        long resolveNanos = System.nanoTime() - resolveStart;
+
+        long connectStart = System.nanoTime();
+        CountDownLatch arrived = new CountDownLatch(connectionsPerHost);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> calls = new ArrayList<>(connectionsPerHost);
+        AtomicReference<String> error = new AtomicReference<>();
+        long waitMillis = client.connectTimeoutMillis() + client.readTimeoutMillis();
+        for (int i = 0; i < connectionsPerHost; i++) {
+            calls.add(executor.submit(() -> {
+                Response response = null;
+                try {
+                    response = client.newCall(new Request.Builder().url(httpUrl).head().build()).execute();
+                    succeeded.incrementAndGet();
+                } catch (IOException e) {
+                    error.set(e.toString());
+                } finally {
+                    arrived.countDown();
+                }
+                try {
+                    // 持有响应直到同host的其他请求也拿到响应，迫使它们各自建连
+                    arrived.await(waitMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (null != response) {
+                        response.close();
+                    }
+                }
+            }));
+        }
+        for (Future<?> call : calls) {
+            try {
+                call.get();
+            } catch (ExecutionException e) {
+                error.set(e.getCause().toString());
+            }
+        }
+        HostWarmup result = new HostWarmup(url, resolveNanos, System.nanoTime() - connectStart, succeeded.get(), error.get());
+        log.info("==> Warmup [{}] resolve {}ms, connect {}ms, {}/{} connections", url,
+                TimeUnit.NANOSECONDS.toMillis(resolveNanos), result.getConnectMillis(), result.getConnections(), connectionsPerHost);
+        return result;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "zujool-warmup-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class HostWarmup {
+
+        private final String url;
+
+        private final long resolveNanos;
+
+        /**
+         * 从发出请求到全部请求拿到响应的耗时
+         */
+        private final long connectNanos;
+
+        /**
+         * 成功完成的请求数
+         */
+        private final int connections;
+
+        /**
+         * 失败原因，全部成功时为null
+         */
+        private final String error;
+
+        HostWarmup(String url, long resolveNanos, long connectNanos, int connections, String error) {
+            this.url = url;
+            this.resolveNanos = resolveNanos;
+            this.connectNanos = connectNanos;
+            this.connections = connections;
+            this.error = error;
+        }
+
+        public long getConnectMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(connectNanos);
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class WarmupReport {
+
+        private final List<HostWarmup> hosts;
+
+        private final long nanos;
+
+        /**
+         * 预热结束时连接池中的连接数
+         */
+        private final int pooledConnections;
+
+        WarmupReport(List<HostWarmup> hosts, long nanos, int pooledConnections) {
+            this.hosts = hosts;
+            this.nanos = nanos;
+            this.pooledConnections = pooledConnections;
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+}
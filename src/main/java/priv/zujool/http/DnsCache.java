@@ -0,0 +1,167 @@
+package priv.zujool.http;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dns;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内DNS缓存
+ * 解析结果在ttl内直接返回，后台线程在过期前刷新最近使用过的host，请求路径上不再同步解析
+ * 刷新失败时继续使用旧结果，避免DNS抖动直接导致请求失败
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class DnsCache implements Dns, Closeable {
+
+    private final Dns delegate;
+
+    private final long ttlNanos;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService refresher;
+
+    public DnsCache(long ttl, TimeUnit unit) {
+        this(Dns.SYSTEM, ttl, unit, true);
+    }
+
+    /**
+     * @param delegate          实际解析
+     * @param ttl               缓存时间
+     * @param unit              时间单位
+     * @param backgroundRefresh 是否后台刷新，不刷新时过期后在请求线程上重新解析
+     */
+    public DnsCache(Dns delegate, long ttl, TimeUnit unit, boolean backgroundRefresh) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.delegate = delegate;
+        this.ttlNanos = unit.toNanos(ttl);
+        if (backgroundRefresh) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "zujool-dns-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, unit.toMillis(ttl) / 2);
+            this.refresher.scheduleWithFixedDelay(this::refresh, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = entries.get(hostname);
+        long now = System.nanoTime();
+        if (null != entry) {
+            entry.lastAccess = now;
+            if (now - entry.resolvedAt < ttlNanos) {
+                return entry.addresses;
+            }
+        }
+        return resolve(hostname, entry);
+    }
+
+    /**
+     * 预解析，返回每个host的解析耗时(纳秒)，解析失败的host不在结果中
+     *
+     * @param hostnames hostnames
+     * @return host -> 解析耗时
+     */
+    public Map<String, Long> preResolve(Collection<String> hostnames) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for (String hostname : hostnames) {
+            long start = System.nanoTime();
+            try {
+                resolve(hostname, entries.get(hostname));
+                timings.put(hostname, System.nanoTime() - start);
+            } catch (UnknownHostException e) {
+                log.warn("==> DNS pre-resolve [{}] failed", hostname, e);
+            }
+        }
+        return timings;
+    }
+
+    public void invalidate(String hostname) {
+        entries.remove(hostname);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private List<InetAddress> resolve(String hostname, Entry stale) throws UnknownHostException {
+        List<InetAddress> addresses;
+        try {
+            addresses = delegate.lookup(hostname);
+        } catch (UnknownHostException e) {
+            if (null != stale) {
+                log.warn("==> DNS resolve [{}] failed, using stale addresses {}", hostname, stale.addresses);
+                return stale.addresses;
+            }
+            throw e;
+        }
+        long now = System.nanoTime();
+        // 后台刷新不算作使用，保留原访问时间
+        entries.put(hostname, new Entry(addresses, now, null == stale ? now : stale.lastAccess));
+        return addresses;
+    }
+
+    /**
+     * 刷新ttl过半的条目，两个ttl内未被使用的条目直接移除
+     */
+    private void refresh() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (now - entry.lastAccess > 2 * ttlNanos) {
+                entries.remove(e.getKey(), entry);
+            } else if (now - entry.resolvedAt >= ttlNanos / 2) {
+                try {
+                    resolve(e.getKey(), entry);
+                } catch (UnknownHostException ex) {
+                    log.warn("==> DNS refresh [{}] failed", e.getKey(), ex);
+                } catch (RuntimeException ex) {
+                    log.error("==> DNS refresh [{}] error", e.getKey(), ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (null != refresher) {
+            refresher.shutdownNow();
+        }
+    }
+
+    private static class Entry {
+
+        private final List<InetAddress> addresses;
+
+        private final long resolvedAt;
+
+        private volatile long lastAccess;
+
+        Entry(List<InetAddress> addresses, long resolvedAt, long lastAccess) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+}
@@ -0,0 +1,341 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 文件下载到磁盘
+ * 响应体通过FileChannel.transferFrom分块写入文件，不在内存中聚合整个响应体
+ * 已存在的部分文件使用Range续传；服务端支持Accept-Ranges时大文件按分段并行下载
+ * 下载时把响应的ETag或Last-Modified记录在同目录的"文件名.validator"中，续传时以If-Range发送，
+ * 远端文件已变化时服务端返回完整内容，重新下载；下载完成后删除该文件
+ * 分段下载先写入同目录的"文件名.part"，全部分段成功后再原子移动到目标文件，中途退出不会留下含空洞的目标文件
+ * 所有请求声明Accept-Encoding: identity，长度与字节区间都按未压缩的文件计算
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class FileDownloader {
+
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private static final String VALIDATOR_SUFFIX = ".validator";
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final String IDENTITY = "identity";
+
+    private final OkHttpClient client;
+
+    /**
+     * 并行分段数，1表示不分段
+     */
+    private final int segments;
+
+    /**
+     * 文件大于该值才分段下载
+     */
+    private final long segmentThreshold;
+
+    public FileDownloader(OkHttpClient client) {
+        this(client, 1, Long.MAX_VALUE);
+    }
+
+    public FileDownloader(OkHttpClient client, int segments, long segmentThreshold) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments must be positive");
+        }
+        this.client = client;
+        this.segments = segments;
+        this.segmentThreshold = segmentThreshold;
+    }
+
+    /**
+     * 下载到指定文件
+     * 文件已存在且非空时从末尾续传，服务端不支持Range时重新下载
+     * 服务端返回416时，只有发送了If-Range且远端长度与本地一致才视为已完整，否则重新下载
+     *
+     * @param url    链接
+     * @param target 目标文件
+     * @return 下载结果
+     * @throws IOException 下载失败
+     */
+    public DownloadResult downloadTo(String url, Path target) throws IOException {
+        long start = System.nanoTime();
+        long existing = Files.exists(target) ? Files.size(target) : 0;
+        if (existing == 0 && segments > 1) {
+            long length = probeRangeLength(url);
+            if (length >= segmentThreshold && length > 0) {
+                long bytes = downloadSegments(url, target, length);
+                return result(url, target, bytes, length, start, segments, false);
+            }
+        }
+        return downloadSingle(url, target, existing, start);
+    }
+
+    private DownloadResult downloadSingle(String url, Path target, long existing, long start) throws IOException {
+        Path validatorFile = validatorFile(target);
+        Request.Builder builder = new Request.Builder().url(url).header("Accept-Encoding", IDENTITY);
+        if (existing > 0) {
+            builder.header("Range", "bytes=" + existing + "-");
+            String validator = Files.exists(validatorFile) ? new String(Files.readAllBytes(validatorFile), StandardCharsets.UTF_8) : null;
+            if (null != validator && !validator.isEmpty()) {
+                builder.header("If-Range", validator);
+            }
+        }
+        Request request = builder.build();
+        try (Response response = client.newCall(request).execute()) {
+            if (existing > 0 && response.code() == 416) {
+                long total = parseTotalLength(response.header("Content-Range"));
+                if (total == existing && null != request.header("If-Range")) {
+                    // 校验值未变且长度一致，本地文件已完整；没有校验值时无法确认内容来自同一版本，重新下载
+                    Files.deleteIfExists(validatorFile);
+                    return result(url, target, 0, existing, start, 1, true);
+                }
+                log.warn("==> Local file [{}] has {} bytes, remote length is {}, validator {}, download again",
+                        target, existing, total, request.header("If-Range"));
+                response.close();
+                return downloadSingle(url, target, 0, start);
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected code " + response);
+            }
+            boolean resumed = existing > 0 && response.code() == 206;
+            if (resumed && parseFirstByte(response.header("Content-Range")) != existing) {
+                throw new IOException("Content-Range " + response.header("Content-Range") + " does not start at " + existing);
+            }
+            long position = resumed ? existing : 0;
+            ResponseBody body = response.body();
+            if (null == body) {
+                throw new IOException("Empty body " + response);
+            }
+            if (!resumed) {
+                saveValidator(validatorFile, response);
+            }
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (!resumed) {
+                    channel.truncate(0);
+                }
+                long bytes = transfer(body, channel, position);
+                Files.deleteIfExists(validatorFile);
+                return result(url, target, bytes, position + bytes, start, 1, resumed);
+            }
+        }
+    }
+
+    private long downloadSegments(String url, Path target, long length) throws IOException {
+        Path partFile = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        long bytes = writeSegments(url, partFile, length);
+        try {
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+        return bytes;
+    }
+
+    /**
+     * 分段并行写入partFile，任一分段失败时删除partFile
+     */
+    private long writeSegments(String url, Path partFile, long length) throws IOException {
+        long segmentSize = (length + segments - 1) / segments;
+        ExecutorService executor = Executors.newFixedThreadPool(segments);
+        boolean done = false;
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // transferFrom不会写入超出文件末尾的位置，先把文件扩展到目标大小
+            channel.write(ByteBuffer.allocate(1), length - 1);
+            List<Future<Long>> futures = new ArrayList<>(segments);
+            for (long from = 0; from < length; from += segmentSize) {
+                long first = from;
+                long last = Math.min(length, from + segmentSize) - 1;
+                futures.add(executor.submit(() -> downloadRange(url, channel, first, last)));
+            }
+            long bytes = 0;
+            for (Future<Long> future : futures) {
+                bytes += future.get();
+            }
+            channel.force(false);
+            done = true;
+            return bytes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("download interrupted " + url, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+            if (!done) {
+                // 分段文件存在空洞，不能用于续传
+                Files.deleteIfExists(partFile);
+            }
+        }
+    }
+
+    private long downloadRange(String url, FileChannel channel, long first, long last) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Range", "bytes=" + first + "-" + last)
+                .header("Accept-Encoding", IDENTITY)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() != 206 || parseFirstByte(response.header("Content-Range")) != first) {
+                throw new IOException("Range not honored " + response);
+            }
+            ResponseBody body = response.body();
+            if (null == body) {
+                throw new IOException("Empty body " + response);
+            }
+            long bytes = transfer(body, channel, first);
+            if (bytes != last - first + 1) {
+                throw new IOException("Short segment " + first + "-" + last + ", got " + bytes);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * HEAD探测，服务端声明Accept-Ranges: bytes且未压缩时返回文件长度，否则返回-1
+     */
+    private long probeRangeLength(String url) throws IOException {
+        Request request = new Request.Builder().url(url).head().header("Accept-Encoding", IDENTITY).build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful() || !"bytes".equalsIgnoreCase(response.header("Accept-Ranges"))) {
+                return -1;
+            }
+            String contentEncoding = response.header("Content-Encoding");
+            if (null != contentEncoding && !IDENTITY.equalsIgnoreCase(contentEncoding)) {
+                // Content-Length是压缩后的长度，不能用于分段
+                return -1;
+            }
+            String length = response.header("Content-Length");
+            return null == length ? -1 : Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Path validatorFile(Path target) {
+        return target.resolveSibling(target.getFileName() + VALIDATOR_SUFFIX);
+    }
+
+    /**
+     * 记录强校验的ETag，没有时记录Last-Modified，都没有时删除旧记录
+     */
+    private static void saveValidator(Path validatorFile, Response response) throws IOException {
+        String validator = response.header("ETag");
+        if (null == validator || validator.startsWith("W/")) {
+            validator = response.header("Last-Modified");
+        }
+        if (null == validator) {
+            Files.deleteIfExists(validatorFile);
+        } else {
+            Files.write(validatorFile, validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Content-Range: bytes first-last/total中的first，无法解析时返回-1
+     */
+    private static long parseFirstByte(String contentRange) {
+        if (null == contentRange || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash < 0 ? -1 : Long.parseLong(contentRange.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Content-Range: bytes * /total或bytes first-last/total中的total，无法解析时返回-1
+     */
+    private static long parseTotalLength(String contentRange) {
+        int slash = null == contentRange ? -1 : contentRange.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long transfer(ResponseBody body, FileChannel channel, long position) throws IOException {
+        long written = 0;
+        long n;
+        while ((n = channel.transferFrom(body.source(), position + written, TRANSFER_CHUNK)) > 0) {
+            written += n;
+        }
+        return written;
+    }
+
+    private static DownloadResult result(String url, Path target, long bytes, long size, long startNanos, int segments, boolean resumed) {
+        DownloadResult result = new DownloadResult(target, bytes, size, System.nanoTime() - startNanos, segments, resumed);
+        log.info("==> Download [{}] to [{}] {} bytes in {}ms, {} B/s, segments {}, resumed {}",
+                url, target, bytes, result.getMillis(), result.getBytesPerSecond(), segments, resumed);
+        return result;
+    }
+
+    @Getter
+    @ToString
+    public static class DownloadResult {
+
+        private final Path path;
+
+        /**
+         * 本次传输的字节数
+         */
+        private final long bytes;
+
+        /**
+         * 下载完成后的文件大小
+         */
+        private final long size;
+
+        private final long nanos;
+
+        private final int segments;
+
+        private final boolean resumed;
+
+        DownloadResult(Path path, long bytes, long size, long nanos, int segments, boolean resumed) {
+            this.path = path;
+            this.bytes = bytes;
+            this.size = size;
+            this.nanos = nanos;
+            this.segments = segments;
+            this.resumed = resumed;
+        }
+
+        public long getMillis() {
+            return nanos / 1_000_000;
+        }
+
+        public long getBytesPerSecond() {
+            return nanos <= 0 ? 0 : (long) (bytes * 1_000_000_000D / nanos);
+        }
+    }
+
+}
@@ -0,0 +1,375 @@
+package priv.zujool.http;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 幂等GET的对冲与重试策略
+ * 首次请求超过对冲延迟未返回时再发一个相同请求，取先成功的响应并取消其余请求
+ * 一轮请求全部失败时按带抖动的指数退避重试，重试受RetryBudget限制
+ * 同一个policy实例应在同一类上游的请求间共享，以积累延迟样本与统计
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class HedgePolicy {
+
+    private static final ScheduledExecutorService SCHEDULER;
+
+    static {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "okhttp-hedge-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        SCHEDULER = executor;
+    }
+
+    /**
+     * 固定对冲延迟，样本不足或未设置百分位时使用，小于0表示不对冲
+     */
+    private final long hedgeDelayMillis;
+
+    /**
+     * 按观测延迟的百分位计算对冲延迟，如0.95，不大于0表示不启用
+     */
+    private final double hedgePercentile;
+
+    private final int maxRetries;
+
+    private final long backoffBaseMillis;
+
+    private final long backoffMaxMillis;
+
+    private final RetryBudget retryBudget;
+
+    private final LatencyWindow latencies = new LatencyWindow(256);
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder hedgesSent = new LongAdder();
+
+    private final LongAdder hedgesWon = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder retriesRejected = new LongAdder();
+
+    @Builder
+    private HedgePolicy(Long hedgeDelayMillis, Double hedgePercentile, Integer maxRetries,
+                        Long backoffBaseMillis, Long backoffMaxMillis, RetryBudget retryBudget) {
+        this.hedgeDelayMillis = null == hedgeDelayMillis ? -1 : hedgeDelayMillis;
+        this.hedgePercentile = null == hedgePercentile ? 0 : hedgePercentile;
+        this.maxRetries = null == maxRetries ? 0 : maxRetries;
+        this.backoffBaseMillis = null == backoffBaseMillis ? 50 : backoffBaseMillis;
+        this.backoffMaxMillis = null == backoffMaxMillis ? 2000 : backoffMaxMillis;
+        this.retryBudget = null == retryBudget ? new RetryBudget(0.1, 10) : retryBudget;
+    }
+
+    /**
+     * 执行请求，只接受GET
+     *
+     * @param client  client
+     * @param request GET请求
+     * @return 响应字符串的future，取消时取消所有进行中的请求
+     */
+    public CompletableFuture<String> execute(OkHttpClient client, Request request) {
+        if (!"GET".equals(request.method())) {
+            throw new IllegalArgumentException("hedging only applies to idempotent GET, got " + request.method());
+        }
+        requests.increment();
+        retryBudget.deposit();
+        HedgedCall hedgedCall = new HedgedCall(client, request);
+        hedgedCall.attempt(0);
+        return hedgedCall.future;
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), hedgesSent.sum(), hedgesWon.sum(), retries.sum(), retriesRejected.sum(), currentHedgeDelay());
+    }
+
+    long currentHedgeDelay() {
+        if (hedgePercentile > 0) {
+            long delay = latencies.percentile(hedgePercentile);
+            if (delay >= 0) {
+                return delay;
+            }
+        }
+        return hedgeDelayMillis;
+    }
+
+    private long backoff(int retry) {
+        long cap = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(retry, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static boolean retryable(int code) {
+        return code >= 500 || code == 429;
+    }
+
+    private class HedgedCall {
+
+        private final OkHttpClient client;
+
+        private final Request request;
+
+        private final OkHttpUtils.CallLog callLog;
+
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private final List<Call> calls = new ArrayList<>(2);
+
+        HedgedCall(OkHttpClient client, Request request) {
+            this.client = client;
+            this.request = request;
+            this.callLog = OkHttpUtils.startCall(request);
+            future.whenComplete((r, e) -> cancelAll());
+        }
+
+        void attempt(int retry) {
+            Attempt attempt = new Attempt(retry);
+            fire(attempt, false);
+            long delay = currentHedgeDelay();
+            if (delay >= 0) {
+                SCHEDULER.schedule(() -> {
+                    if (!future.isDone() && attempt.startHedge()) {
+                        hedgesSent.increment();
+                        fire(attempt, true);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void fire(Attempt attempt, boolean hedge) {
+            Call call = client.newCall(request);
+            synchronized (calls) {
+                if (future.isDone()) {
+                    return;
+                }
+                calls.add(call);
+            }
+            long start = System.nanoTime();
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    failed(attempt, e, true);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (Response r = response) {
+                        if (!r.isSuccessful()) {
+                            failed(attempt, new IOException("Unexpected code " + r), retryable(r.code()));
+                            return;
+                        }
+                        String body = OkHttpUtils.readResponse(r, callLog);
+                        latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        if (future.complete(body) && hedge) {
+                            hedgesWon.increment();
+                        }
+                    } catch (IOException e) {
+                        failed(attempt, e, true);
+                    }
+                }
+            });
+        }
+
+        private void failed(Attempt attempt, IOException e, boolean retryable) {
+            if (future.isDone()) {
+                return;
+            }
+            if (!retryable) {
+                OkHttpUtils.logError(callLog, request.url(), e);
+                future.completeExceptionally(e);
+                return;
+            }
+            if (!attempt.finishFailed()) {
+                // 本轮还有请求在进行
+                return;
+            }
+            int retry = attempt.retry;
+            if (retry >= maxRetries) {
+                OkHttpUtils.logError(callLog, request.url(), e);
+                future.completeExceptionally(e);
+                return;
+            }
+            if (!retryBudget.tryWithdraw()) {
+                retriesRejected.increment();
+                log.error("==> Retry budget exhausted [{}][{}],msg:{}", request.url(), callLog.reqId, e.getMessage());
+                future.completeExceptionally(e);
+                return;
+            }
+            retries.increment();
+            synchronized (calls) {
+                calls.clear();
+            }
+            SCHEDULER.schedule(() -> attempt(retry + 1), backoff(retry), TimeUnit.MILLISECONDS);
+        }
+
+        private void cancelAll() {
+            List<Call> snapshot;
+            synchronized (calls) {
+                snapshot = new ArrayList<>(calls);
+            }
+            for (Call call : snapshot) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * 一轮请求：首次请求加至多一个对冲请求
+     */
+    private static class Attempt {
+
+        private final int retry;
+
+        private int outstanding = 1;
+
+        private boolean closed;
+
+        Attempt(int retry) {
+            this.retry = retry;
+        }
+
+        synchronized boolean startHedge() {
+            if (closed) {
+                return false;
+            }
+            outstanding++;
+            return true;
+        }
+
+        /**
+         * @return 本轮请求是否已全部失败
+         */
+        synchronized boolean finishFailed() {
+            outstanding--;
+            if (outstanding > 0) {
+                return false;
+            }
+            // 首次请求在对冲发出前失败时，不再发出对冲，直接进入重试
+            closed = true;
+            return true;
+        }
+    }
+
+    /**
+     * 最近N个成功请求的延迟，单位毫秒
+     * 百分位每新增RECOMPUTE_INTERVAL个样本才重新排序计算一次，其余调用只读缓存值，不加锁
+     * 一个窗口只用于同一个百分位
+     */
+    private static class LatencyWindow {
+
+        private static final int RECOMPUTE_INTERVAL = 32;
+
+        private final long[] samples;
+
+        private int count;
+
+        private int next;
+
+        /**
+         * 累计记录的样本数
+         */
+        private volatile long recorded;
+
+        /**
+         * 计算cachedPercentile时的recorded，-1表示尚未计算
+         */
+        private volatile long computedAt = -1;
+
+        private volatile long cachedPercentile = -1;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+            recorded++;
+        }
+
+        /**
+         * 样本不足20个时返回-1
+         */
+        long percentile(double p) {
+            long at = computedAt;
+            if (at >= 0 && recorded - at < RECOMPUTE_INTERVAL) {
+                return cachedPercentile;
+            }
+            synchronized (this) {
+                // 等锁期间可能已被其他线程重新计算
+                if (computedAt >= 0 && recorded - computedAt < RECOMPUTE_INTERVAL) {
+                    return cachedPercentile;
+                }
+                if (count < 20) {
+                    return -1;
+                }
+                long[] copy = Arrays.copyOf(samples, count);
+                Arrays.sort(copy);
+                int index = (int) Math.min(count - 1, Math.ceil(p * count) - 1);
+                cachedPercentile = copy[Math.max(0, index)];
+                computedAt = recorded;
+                return cachedPercentile;
+            }
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Stats {
+
+        private final long requests;
+
+        private final long hedgesSent;
+
+        private final long hedgesWon;
+
+        private final long retries;
+
+        private final long retriesRejected;
+
+        private final long hedgeDelayMillis;
+
+        Stats(long requests, long hedgesSent, long hedgesWon, long retries, long retriesRejected, long hedgeDelayMillis) {
+            this.requests = requests;
+            this.hedgesSent = hedgesSent;
+            this.hedgesWon = hedgesWon;
+            this.retries = retries;
+            this.retriesRejected = retriesRejected;
+            this.hedgeDelayMillis = hedgeDelayMillis;
+        }
+
+        /**
+         * 对冲请求胜出的比例
+         */
+        public double getHedgeWinRate() {
+            return hedgesSent == 0 ? 0 : (double) hedgesWon / hedgesSent;
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package priv.zujool.http;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按host的自适应限流与熔断拦截器
+ * 熔断时抛出CircuitOpenException，超出并发上限时抛出ConcurrencyLimitException，两者都不会发出请求
+ * 通过OkHttpUtils.globalSetHostGuard安装到共享client，自定义client可直接addInterceptor
+ *
+ * @author zujool
+ **/
+public class HostGuard implements Interceptor {
+
+    private final int initialLimit;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdMillis;
+
+    private final double backoffRatio;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final ConcurrentMap<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    @Builder
+    private HostGuard(Integer initialLimit, Integer minLimit, Integer maxLimit, Long latencyThresholdMillis,
+                      Double backoffRatio, Integer failureThreshold, Long openMillis) {
+        this.initialLimit = null == initialLimit ? 20 : initialLimit;
+        this.minLimit = null == minLimit ? 1 : minLimit;
+        this.maxLimit = null == maxLimit ? 200 : maxLimit;
+        this.latencyThresholdMillis = null == latencyThresholdMillis ? 1000 : latencyThresholdMillis;
+        this.backoffRatio = null == backoffRatio ? 0.9 : backoffRatio;
+        this.failureThreshold = null == failureThreshold ? 5 : failureThreshold;
+        this.openMillis = null == openMillis ? 10000 : openMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        HostState state = hosts.computeIfAbsent(host, h -> new HostState());
+        long permit = state.breaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            throw new CircuitOpenException(host);
+        }
+        if (!state.limiter.tryAcquire()) {
+            state.breaker.onIgnored(permit);
+            throw new ConcurrencyLimitException(host, state.limiter.getLimit());
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                state.limiter.releaseIgnored();
+                state.breaker.onIgnored(permit);
+            } else {
+                state.limiter.release(elapsedMillis(start), true);
+                state.breaker.onFailure(permit);
+            }
+            throw e;
+        }
+        boolean failed = response.code() >= 500;
+        state.limiter.release(elapsedMillis(start), failed);
+        if (failed) {
+            state.breaker.onFailure(permit);
+        } else {
+            state.breaker.onSuccess(permit);
+        }
+        return response;
+    }
+
+    public HostSnapshot snapshot(String host) {
+        HostState state = hosts.get(host);
+        if (null == state) {
+            return null;
+        }
+        return new HostSnapshot(host, state.breaker.getState(), state.limiter.getLimit(), state.limiter.getInFlight());
+    }
+
+    public Map<String, HostSnapshot> snapshots() {
+        Map<String, HostSnapshot> result = new HashMap<>(hosts.size());
+        for (String host : hosts.keySet()) {
+            result.put(host, snapshot(host));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private class HostState {
+
+        private final AdaptiveLimiter limiter = new AdaptiveLimiter(initialLimit, minLimit, maxLimit, latencyThresholdMillis, backoffRatio);
+
+        private final CircuitBreaker breaker = new CircuitBreaker(failureThreshold, openMillis);
+    }
+
+    @Getter
+    @ToString
+    public static class HostSnapshot {
+
+        private final String host;
+
+        private final CircuitBreaker.State state;
+
+        private final int limit;
+
+        private final int inFlight;
+
+        HostSnapshot(String host, CircuitBreaker.State state, int limit, int inFlight) {
+            this.host = host;
+            this.state = state;
+            this.limit = limit;
+            this.inFlight = inFlight;
+        }
+    }
+
+}
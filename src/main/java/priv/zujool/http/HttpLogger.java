@@ -0,0 +1,57 @@
+package priv.zujool.http;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * OkHttpUtils的请求日志接口
+ * 每个请求开始时调用一次sample决定是否记录该请求与其响应，错误日志不受采样影响
+ *
+ * @author zujool
+ **/
+public interface HttpLogger {
+
+    /**
+     * 是否记录本次请求，日志级别关闭时应返回false以跳过所有格式化
+     *
+     * @return 是否记录
+     */
+    boolean sample();
+
+    /**
+     * 记录请求
+     *
+     * @param reqId   请求id
+     * @param request 请求
+     * @param body    调用方提供的请求体文本，可能为null
+     * @param logBody 是否记录请求体
+     */
+    void logRequest(String reqId, Request request, String body, boolean logBody);
+
+    /**
+     * 记录响应
+     *
+     * @param reqId   请求id
+     * @param body    响应字符串
+     * @param logBody 是否记录响应内容，否则只记录长度
+     */
+    void logResponse(String reqId, String body, boolean logBody);
+
+    /**
+     * 记录流式响应
+     *
+     * @param reqId         请求id
+     * @param contentLength 响应声明的长度，未知时为-1
+     */
+    void logStreamed(String reqId, long contentLength);
+
+    /**
+     * 记录请求失败
+     *
+     * @param reqId 请求id
+     * @param url   url
+     * @param e     异常
+     */
+    void logError(String reqId, HttpUrl url, Exception e);
+
+}
@@ -0,0 +1,255 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于EventListener的分阶段耗时统计，按"method host"分组
+ * 通过OkHttpUtils.globalSetMetrics安装到共享client，自定义client可用eventListenerFactory(metrics)安装
+ *
+ * @author zujool
+ **/
+public class HttpMetrics implements EventListener.Factory {
+
+    public enum Phase {
+        DNS, CONNECT, TLS, REQUEST_WRITE, TTFB, RESPONSE_BODY, TOTAL
+    }
+
+    private final ConcurrentMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public EventListener create(Call call) {
+        Request request = call.request();
+        String key = request.method() + " " + request.url().host();
+        EndpointStats stats = endpoints.get(key);
+        if (null == stats) {
+            stats = endpoints.computeIfAbsent(key, k -> new EndpointStats());
+        }
+        return new PhaseListener(stats);
+    }
+
+    public Map<String, EndpointSnapshot> snapshot() {
+        Map<String, EndpointSnapshot> result = new HashMap<>(endpoints.size());
+        endpoints.forEach((key, stats) -> result.put(key, stats.snapshot(key)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    public EndpointSnapshot snapshot(String method, String host) {
+        String key = method + " " + host;
+        EndpointStats stats = endpoints.get(key);
+        return null == stats ? null : stats.snapshot(key);
+    }
+
+    private static class EndpointStats {
+
+        private final EnumMap<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder connectionsAcquired = new LongAdder();
+
+        private final LongAdder connectionsReused = new LongAdder();
+
+        EndpointStats() {
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new LatencyHistogram());
+            }
+        }
+
+        void record(Phase phase, long startNanos, long endNanos) {
+            if (startNanos != 0 && endNanos >= startNanos) {
+                phases.get(phase).record(TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+            }
+        }
+
+        EndpointSnapshot snapshot(String key) {
+            EnumMap<Phase, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(Phase.class);
+            phases.forEach((phase, histogram) -> snapshots.put(phase, histogram.snapshot()));
+            return new EndpointSnapshot(key, calls.sum(), failures.sum(), connectionsAcquired.sum(), connectionsReused.sum(), snapshots);
+        }
+    }
+
+    /**
+     * 单次调用的事件监听，只保存时间戳
+     */
+    private static class PhaseListener extends EventListener {
+
+        private final EndpointStats stats;
+
+        private long callStart;
+
+        private long dnsStart;
+
+        private long connectStart;
+
+        private long secureConnectStart;
+
+        private long requestStart;
+
+        private long requestEnd;
+
+        private long responseHeadersStart;
+
+        private long responseBodyStart;
+
+        private boolean connected;
+
+        PhaseListener(EndpointStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+            stats.calls.increment();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            stats.record(Phase.DNS, dnsStart, System.nanoTime());
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+            connected = true;
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            stats.record(Phase.TLS, secureConnectStart, System.nanoTime());
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            stats.record(Phase.CONNECT, connectStart, System.nanoTime());
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            stats.connectionsAcquired.increment();
+            if (!connected) {
+                stats.connectionsReused.increment();
+            }
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseHeadersStart = System.nanoTime();
+            stats.record(Phase.REQUEST_WRITE, requestStart, requestEnd);
+            stats.record(Phase.TTFB, requestEnd, responseHeadersStart);
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            responseBodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            stats.record(Phase.RESPONSE_BODY, responseBodyStart, System.nanoTime());
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            stats.record(Phase.TOTAL, callStart, System.nanoTime());
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            stats.failures.increment();
+            stats.record(Phase.TOTAL, callStart, System.nanoTime());
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            // 重定向/重试时下一次请求重新计时
+            connected = false;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class EndpointSnapshot {
+
+        /**
+         * "method host"
+         */
+        private final String key;
+
+        private final long calls;
+
+        private final long failures;
+
+        private final long connectionsAcquired;
+
+        private final long connectionsReused;
+
+        private final Map<Phase, LatencyHistogram.Snapshot> phases;
+
+        EndpointSnapshot(String key, long calls, long failures, long connectionsAcquired, long connectionsReused, Map<Phase, LatencyHistogram.Snapshot> phases) {
+            this.key = key;
+            this.calls = calls;
+            this.failures = failures;
+            this.connectionsAcquired = connectionsAcquired;
+            this.connectionsReused = connectionsReused;
+            this.phases = Collections.unmodifiableMap(phases);
+        }
+
+        /**
+         * 连接复用比例
+         */
+        public double getConnectionReuseRatio() {
+            return connectionsAcquired == 0 ? 0 : (double) connectionsReused / connectionsAcquired;
+        }
+    }
+
+}
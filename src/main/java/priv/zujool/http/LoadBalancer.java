@@ -0,0 +1,350 @@
+package priv.zujool.http;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端负载均衡拦截器
+ * 请求url的host为已注册的逻辑host时，按策略选出一个节点并改写scheme/host/port，其余部分保持不变
+ * 节点连续失败(IOException或5xx)达到阈值，或平均延迟超过阈值时被摘除一段时间，全部节点被摘除时退化为使用全部节点
+ * 通过OkHttpUtils.globalSetLoadBalancer安装到共享client，自定义client可直接addInterceptor后使用*WithClient方法
+ *
+ * @author zujool
+ **/
+@Slf4j
+public class LoadBalancer implements Interceptor {
+
+    /**
+     * 一致性hash的key，未设置时使用请求的path与query，该请求头不会发送到服务端
+     */
+    public static final String HASH_KEY_HEADER = "X-Lb-Hash-Key";
+
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+
+    private final int failureThreshold;
+
+    private final long ejectMillis;
+
+    private final long latencyThresholdMillis;
+
+    private final int virtualNodes;
+
+    private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * @param failureThreshold       连续失败多少次后摘除，默认3
+     * @param ejectMillis            摘除时长，默认10000
+     * @param latencyThresholdMillis 平均延迟超过该值时摘除，默认0即不按延迟摘除
+     * @param virtualNodes           一致性hash环上每个节点的虚拟节点数，默认160
+     */
+    @Builder
+    private LoadBalancer(Integer failureThreshold, Long ejectMillis, Long latencyThresholdMillis, Integer virtualNodes) {
+        this.failureThreshold = null == failureThreshold ? 3 : failureThreshold;
+        this.ejectMillis = null == ejectMillis ? 10000 : ejectMillis;
+        this.latencyThresholdMillis = null == latencyThresholdMillis ? 0 : latencyThresholdMillis;
+        this.virtualNodes = null == virtualNodes ? 160 : virtualNodes;
+    }
+
+    /**
+     * 注册或替换逻辑host
+     *
+     * @param logicalHost 逻辑host，如user-service，请求时使用http://user-service/path
+     * @param endpoints   节点地址，如http://10.0.0.1:8080，只取scheme/host/port
+     * @param strategy    选择策略
+     */
+    public void register(String logicalHost, List<String> endpoints, Strategy strategy) {
+        if (null == endpoints || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("endpoints of [" + logicalHost + "] can not be empty");
+        }
+        List<Endpoint> list = new ArrayList<>(endpoints.size());
+        for (String endpoint : endpoints) {
+            HttpUrl url = HttpUrl.parse(endpoint);
+            if (null == url) {
+                throw new IllegalArgumentException("invalid endpoint: " + endpoint);
+            }
+            list.add(new Endpoint(url));
+        }
+        pools.put(logicalHost, new Pool(Collections.unmodifiableList(list), strategy));
+        log.info("==> Load balancer registered [{}] -> {} ({})", logicalHost, endpoints, strategy);
+    }
+
+    public void remove(String logicalHost) {
+        pools.remove(logicalHost);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Pool pool = pools.get(request.url().host());
+        if (null == pool) {
+            return chain.proceed(request);
+        }
+        long now = System.nanoTime();
+        Endpoint endpoint = pool.pick(request, now);
+        HttpUrl url = request.url().newBuilder()
+                .scheme(endpoint.url.scheme())
+                .host(endpoint.url.host())
+                .port(endpoint.url.port())
+                .build();
+        endpoint.inFlight.incrementAndGet();
+        endpoint.requests.increment();
+        Response response;
+        try {
+            response = chain.proceed(request.newBuilder().url(url).removeHeader(HASH_KEY_HEADER).build());
+        } catch (IOException | RuntimeException e) {
+            if (!chain.call().isCanceled()) {
+                onFailure(request.url().host(), endpoint);
+            }
+            throw e;
+        } finally {
+            endpoint.inFlight.decrementAndGet();
+        }
+        if (response.code() >= 500) {
+            onFailure(request.url().host(), endpoint);
+        } else {
+            onSuccess(request.url().host(), endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now));
+        }
+        return response;
+    }
+
+    public List<EndpointSnapshot> snapshot(String logicalHost) {
+        Pool pool = pools.get(logicalHost);
+        if (null == pool) {
+            return Collections.emptyList();
+        }
+        long now = System.nanoTime();
+        List<EndpointSnapshot> result = new ArrayList<>(pool.endpoints.size());
+        for (Endpoint endpoint : pool.endpoints) {
+            result.add(new EndpointSnapshot(endpoint.url.toString(), endpoint.isEjected(now), endpoint.inFlight.get(),
+                    endpoint.latencyMillis, endpoint.requests.sum(), endpoint.failures.sum(), endpoint.ejections.sum()));
+        }
+        return result;
+    }
+
+    private void onFailure(String logicalHost, Endpoint endpoint) {
+        endpoint.failures.increment();
+        if (endpoint.consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            eject(logicalHost, endpoint, "consecutive failures");
+        }
+    }
+
+    private void onSuccess(String logicalHost, Endpoint endpoint, long millis) {
+        endpoint.consecutiveFailures.set(0);
+        double latency = endpoint.latencyMillis;
+        latency = latency <= 0 ? millis : latency + LATENCY_EWMA_ALPHA * (millis - latency);
+        endpoint.latencyMillis = latency;
+        if (latencyThresholdMillis > 0 && latency > latencyThresholdMillis) {
+            eject(logicalHost, endpoint, "latency " + (long) latency + "ms");
+        }
+    }
+
+    private void eject(String logicalHost, Endpoint endpoint, String reason) {
+        long now = System.nanoTime();
+        if (endpoint.isEjected(now)) {
+            return;
+        }
+        endpoint.ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejectMillis);
+        endpoint.consecutiveFailures.set(0);
+        endpoint.latencyMillis = 0;
+        endpoint.ejections.increment();
+        log.warn("==> Endpoint [{}] of [{}] ejected for {}ms: {}", endpoint.url, logicalHost, ejectMillis, reason);
+    }
+
+    /**
+     * 64位FNV-1a后再做一次murmur3的fmix64，使相近的key在环上分散
+     */
+    static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            h = (h ^ (c & 0xff)) * 0x100000001b3L;
+            h = (h ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public enum Strategy {
+        /**
+         * 轮询
+         */
+        ROUND_ROBIN,
+        /**
+         * 在途请求最少的节点
+         */
+        LEAST_IN_FLIGHT,
+        /**
+         * 按HASH_KEY_HEADER或path+query的一致性hash，相同key固定落到同一节点，节点摘除时只迁移该节点的key
+         */
+        CONSISTENT_HASH
+    }
+
+    private class Pool {
+
+        private final List<Endpoint> endpoints;
+
+        private final Strategy strategy;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private final NavigableMap<Long, Endpoint> ring;
+
+        Pool(List<Endpoint> endpoints, Strategy strategy) {
+            this.endpoints = endpoints;
+            this.strategy = strategy;
+            if (Strategy.CONSISTENT_HASH == strategy) {
+                TreeMap<Long, Endpoint> map = new TreeMap<>();
+                for (Endpoint endpoint : endpoints) {
+                    for (int i = 0; i < virtualNodes; i++) {
+                        map.put(hash(endpoint.url.host() + ':' + endpoint.url.port() + '#' + i), endpoint);
+                    }
+                }
+                this.ring = map;
+            } else {
+                this.ring = null;
+            }
+        }
+
+        Endpoint pick(Request request, long now) {
+            switch (strategy) {
+                case LEAST_IN_FLIGHT:
+                    return leastInFlight(now);
+                case CONSISTENT_HASH:
+                    return consistentHash(request, now);
+                default:
+                    return roundRobin(now);
+            }
+        }
+
+        private Endpoint roundRobin(long now) {
+            int size = endpoints.size();
+            int start = next.getAndIncrement();
+            for (int i = 0; i < size; i++) {
+                Endpoint endpoint = endpoints.get(Math.floorMod(start + i, size));
+                if (!endpoint.isEjected(now)) {
+                    return endpoint;
+                }
+            }
+            return endpoints.get(Math.floorMod(start, size));
+        }
+
+        private Endpoint leastInFlight(long now) {
+            int size = endpoints.size();
+            // 从轮转的起点开始扫描，在途数相同时分散到不同节点
+            int start = next.getAndIncrement();
+            Endpoint best = null;
+            for (int i = 0; i < size; i++) {
+                Endpoint endpoint = endpoints.get(Math.floorMod(start + i, size));
+                if (!endpoint.isEjected(now) && (null == best || endpoint.inFlight.get() < best.inFlight.get())) {
+                    best = endpoint;
+                }
+            }
+            return null == best ? endpoints.get(Math.floorMod(start, size)) : best;
+        }
+
+        private Endpoint consistentHash(Request request, long now) {
+            String key = request.header(HASH_KEY_HEADER);
+            if (null == key) {
+                String query = request.url().encodedQuery();
+                key = null == query ? request.url().encodedPath() : request.url().encodedPath() + '?' + query;
+            }
+            long h = hash(key);
+            for (Map.Entry<Long, Endpoint> entry : ring.tailMap(h, true).entrySet()) {
+                if (!entry.getValue().isEjected(now)) {
+                    return entry.getValue();
+                }
+            }
+            for (Map.Entry<Long, Endpoint> entry : ring.headMap(h, false).entrySet()) {
+                if (!entry.getValue().isEjected(now)) {
+                    return entry.getValue();
+                }
+            }
+            Map.Entry<Long, Endpoint> entry = ring.ceilingEntry(h);
+            return null == entry ? ring.firstEntry().getValue() : entry.getValue();
+        }
+    }
+
+    private static class Endpoint {
+
+        private final HttpUrl url;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder ejections = new LongAdder();
+
+        private volatile long ejectedUntil;
+
+        private volatile double latencyMillis;
+
+        Endpoint(HttpUrl url) {
+            this.url = url;
+            this.ejectedUntil = System.nanoTime();
+        }
+
+        boolean isEjected(long now) {
+            return now - ejectedUntil < 0;
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class EndpointSnapshot {
+
+        private final String url;
+
+        private final boolean ejected;
+
+        private final int inFlight;
+
+        /**
+         * 成功请求的平均延迟(EWMA)，单位毫秒
+         */
+        private final double latencyMillis;
+
+        private final long requests;
+
+        private final long failures;
+
+        private final long ejections;
+
+        EndpointSnapshot(String url, boolean ejected, int inFlight, double latencyMillis, long requests, long failures, long ejections) {
+            this.url = url;
+            this.ejected = ejected;
+            this.inFlight = inFlight;
+            this.latencyMillis = latencyMillis;
+            this.requests = requests;
+            this.failures = failures;
+            this.ejections = ejections;
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GET响应的内存缓存拦截器，按字节数限制容量，LRU淘汰
+ * 遵循响应的Cache-Control: max-age/no-store/no-cache，过期后携带If-None-Match/If-Modified-Since重新验证，
+ * 304时直接返回内存中的内容
+ * 只缓存200响应，缓存key为完整url加请求的Accept与Accept-Encoding，带Range或If-Range的请求不经过缓存
+ * 缓存在所有调用方之间共享：带Authorization或Cookie的请求不经过缓存，
+ * 带Vary或Cache-Control: private的响应不缓存，避免把一个用户的内容返回给另一个用户
+ *
+ * @author zujool
+ **/
+public class MemoryResponseCache implements Interceptor {
+
+    private final long maxBytes;
+
+    private final long maxEntryBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder revalidated = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes      缓存总字节数上限
+     * @param maxEntryBytes 单个响应体字节数上限，超过时不缓存
+     */
+    public MemoryResponseCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxBytes, maxEntryBytes);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) || request.cacheControl().noStore()
+                || null != request.header("If-None-Match") || null != request.header("If-Modified-Since")
+                || null != request.header("Authorization") || null != request.header("Cookie")
+                || null != request.header("Range") || null != request.header("If-Range")) {
+            return chain.proceed(request);
+        }
+        String key = key(request);
+        Entry entry = get(key);
+        long now = System.currentTimeMillis();
+        if (null != entry && !request.cacheControl().noCache() && entry.freshUntil > now) {
+            hits.increment();
+            return entry.toResponse(request, now);
+        }
+        Request.Builder builder = request.newBuilder();
+        boolean conditional = false;
+        if (null != entry) {
+            if (null != entry.etag) {
+                builder.header("If-None-Match", entry.etag);
+                conditional = true;
+            }
+            if (null != entry.lastModified) {
+                builder.header("If-Modified-Since", entry.lastModified);
+                conditional = true;
+            }
+        }
+        Response response = chain.proceed(conditional ? builder.build() : request);
+        if (conditional && response.code() == 304) {
+            response.close();
+            revalidated.increment();
+            Entry refreshed = entry.refresh(response, now);
+            put(key, refreshed);
+            return refreshed.toResponse(request, now);
+        }
+        misses.increment();
+        return store(key, request, response, now);
+    }
+
+    /**
+     * 调用方显式指定Accept-Encoding时OkHttp不解压，响应体与未指定时不同，需分开缓存
+     */
+    private static String key(Request request) {
+        String accept = request.header("Accept");
+        String acceptEncoding = request.header("Accept-Encoding");
+        if (null == accept && null == acceptEncoding) {
+            return request.url().toString();
+        }
+        return request.url() + "\n" + accept + "\n" + acceptEncoding;
+    }
+
+    private Response store(String key, Request request, Response response, long now) throws IOException {
+        CacheControl cacheControl = response.cacheControl();
+        ResponseBody body = response.body();
+        if (response.code() != 200 || cacheControl.noStore() || cacheControl.isPrivate()
+                || null != response.header("Vary") || null == body) {
+            remove(key);
+            return response;
+        }
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        long freshUntil = freshUntil(response, now);
+        if (freshUntil <= now && null == etag && null == lastModified) {
+            // 既不新鲜也无法验证，缓存没有意义
+            return response;
+        }
+        // peek不会消费原始body，超长时原样返回流式响应
+        ResponseBody peeked = response.peekBody(maxEntryBytes + 1);
+        if (peeked.contentLength() > maxEntryBytes) {
+            return response;
+        }
+        byte[] bytes = peeked.bytes();
+        response.close();
+        Entry entry = new Entry(bytes, body.contentType(), response.headers(), response.protocol(), response.message(),
+                etag, lastModified, freshUntil);
+        put(key, entry);
+        return entry.toResponse(request, now);
+    }
+
+    private static long freshUntil(Response response, long now) {
+        CacheControl cacheControl = response.cacheControl();
+        if (cacheControl.noCache() || cacheControl.maxAgeSeconds() <= 0) {
+            return 0;
+        }
+        long age = 0;
+        String ageHeader = response.header("Age");
+        if (null != ageHeader) {
+            try {
+                age = Long.parseLong(ageHeader);
+            } catch (NumberFormatException ignored) {
+                // 忽略非法Age
+            }
+        }
+        return now + TimeUnit.SECONDS.toMillis(Math.max(0, cacheControl.maxAgeSeconds() - age));
+    }
+
+    private synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (null != old) {
+            currentBytes -= old.body.length;
+        }
+        currentBytes += entry.body.length;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            currentBytes -= eldest.body.length;
+            evictions.increment();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Entry old = entries.remove(key);
+        if (null != old) {
+            currentBytes -= old.body.length;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public Stats stats() {
+        int size;
+        long bytes;
+        synchronized (this) {
+            size = entries.size();
+            bytes = currentBytes;
+        }
+        return new Stats(hits.sum(), revalidated.sum(), misses.sum(), evictions.sum(), size, bytes);
+    }
+
+    private static class Entry {
+
+        private final byte[] body;
+
+        private final MediaType contentType;
+
+        private final Headers headers;
+
+        private final Protocol protocol;
+
+        private final String message;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final long freshUntil;
+
+        Entry(byte[] body, MediaType contentType, Headers headers, Protocol protocol, String message,
+              String etag, String lastModified, long freshUntil) {
+            this.body = body;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.protocol = protocol;
+            this.message = message;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+        }
+
+        /**
+         * 304响应更新验证器与新鲜度，body保持不变
+         */
+        Entry refresh(Response notModified, long now) {
+            Headers.Builder merged = headers.newBuilder();
+            Headers updated = notModified.headers();
+            for (String name : updated.names()) {
+                if (!"Content-Length".equalsIgnoreCase(name)) {
+                    // 先删后加，保留Set-Cookie等多值头的全部值
+                    merged.removeAll(name);
+                    for (String value : updated.values(name)) {
+                        merged.add(name, value);
+                    }
+                }
+            }
+            String newEtag = notModified.header("ETag");
+            String newLastModified = notModified.header("Last-Modified");
+            return new Entry(body, contentType, merged.build(), protocol, message,
+                    null == newEtag ? etag : newEtag, null == newLastModified ? lastModified : newLastModified,
+                    freshUntil(notModified, now));
+        }
+
+        Response toResponse(Request request, long now) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(protocol)
+                    .code(200)
+                    .message(message)
+                    .headers(headers)
+                    .body(ResponseBody.create(body, contentType))
+                    .sentRequestAtMillis(now)
+                    .receivedResponseAtMillis(now)
+                    .build();
+        }
+    }
+
+    @Getter
+    @ToString
+    public static class Stats {
+
+        /**
+         * 新鲜缓存直接命中
+         */
+        private final long hits;
+
+        /**
+         * 304重新验证后命中
+         */
+        private final long revalidated;
+
+        private final long misses;
+
+        private final long evictions;
+
+        private final int entries;
+
+        private final long bytes;
+
+        Stats(long hits, long revalidated, long misses, long evictions, int entries, long bytes) {
+            this.hits = hits;
+            this.revalidated = revalidated;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+    }
+
+}
@@ -1,20 +1,31 @@
 package priv.zujool.http;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.MDC;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * http模拟请求等工具
@@ -25,10 +36,23 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class OkHttpUtils {
 
-    private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
-    private static final MediaType MEDIA_TYPE_XML = MediaType.parse("application/xml; charset=utf-8");
+    static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+    static final MediaType MEDIA_TYPE_XML = MediaType.parse("application/xml; charset=utf-8");
 
-    private static final OkHttpClient CLIENT = new OkHttpClient();
+    /**
+     * 设为true且运行在JDK 21+时，共享Dispatcher使用虚拟线程执行异步请求
+     * 同步请求始终在调用线程上执行，不受Dispatcher并发上限限制；调用方是虚拟线程时阻塞的是该虚拟线程，
+     * 但HTTP/2下OkHttp在synchronized中等待数据，JDK 21上仍会钉住载体线程
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "zujool.http.virtualThreads";
+
+    private static final boolean USE_VIRTUAL_THREADS = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) && VirtualThreads.isSupported();
+
+    private static final OkHttpClient CLIENT = USE_VIRTUAL_THREADS
+            ? new OkHttpClient.Builder().dispatcher(new Dispatcher(VirtualThreads.newExecutor("okhttp-vt-"))).build()
+            : new OkHttpClient();
+
+    private static final ClientRegistry CLIENT_REGISTRY = new ClientRegistry(CLIENT);
 
     private static final int CONNECT_TIMEOUT = 10000;
     private static final int WRITE_TIMEOUT = 0;
@@ -53,35 +77,272 @@ public class OkHttpUtils {
         boolean logResult = true;
     }
 
-    private static final ThreadLocal<ReqContext> REQ_CONTEXT_PROVIDER = ThreadLocal.withInitial(ReqContext::new);
+    /**
+     * 调用过setLogResult/setLogRequestParam的线程到其日志开关的映射，下一次请求开始时移除
+     * 不使用ThreadLocal：ThreadLocal.get()会为每个发起请求的线程创建ThreadLocalMap，虚拟线程数量巨大时占用可观的内存；
+     * 这里未设置开关的线程只做一次isEmpty判断，不分配对象
+     */
+    private static final ConcurrentMap<Thread, ReqContext> REQ_CONTEXTS = new ConcurrentHashMap<>();
+
+    /**
+     * REQ_CONTEXTS达到该大小时清理已结束的线程
+     */
+    private static volatile int reqContextPurgeSize = 1024;
+
+    private static volatile HttpLogger httpLogger = new Slf4jHttpLogger();
+
+    private static volatile RequestCoalescer requestCoalescer = new RequestCoalescer();
 
+    /**
+     * 仅对当前线程的下一次请求生效
+     *
+     * @param logResult 是否记录响应内容
+     */
     public static void setLogResult(boolean logResult) {
-        REQ_CONTEXT_PROVIDER.get().setLogResult(logResult);
+        reqContext().setLogResult(logResult);
+    }
+
+    /**
+     * 仅对当前线程的下一次请求生效
+     *
+     * @param logRequestParam 是否记录请求体
+     */
+    public static void setLogRequestParam(boolean logRequestParam) {
+        reqContext().setLogRequestParam(logRequestParam);
+    }
+
+    private static ReqContext reqContext() {
+        Thread thread = Thread.currentThread();
+        ReqContext context = REQ_CONTEXTS.get(thread);
+        if (null == context) {
+            if (REQ_CONTEXTS.size() >= reqContextPurgeSize) {
+                purgeReqContexts();
+            }
+            context = new ReqContext();
+            REQ_CONTEXTS.put(thread, context);
+        }
+        return context;
+    }
+
+    /**
+     * 设置了开关却没有再发起请求就结束的线程不会被移除，在这里清理
+     * 清理后仍有大量存活线程时提高下一次清理的阈值，避免每次设置都遍历
+     */
+    private static void purgeReqContexts() {
+        REQ_CONTEXTS.keySet().removeIf(thread -> !thread.isAlive());
+        reqContextPurgeSize = Math.max(1024, REQ_CONTEXTS.size() * 2);
+    }
+
+    /**
+     * 取出并移除当前线程的日志开关
+     */
+    private static ReqContext takeReqContext() {
+        return REQ_CONTEXTS.isEmpty() ? null : REQ_CONTEXTS.remove(Thread.currentThread());
+    }
+
+    /**
+     * 替换请求日志实现，如new Slf4jHttpLogger(0.01, 2048)按1%采样并截断到2048字符
+     *
+     * @param logger logger
+     */
+    public static void globalSetHttpLogger(HttpLogger logger) {
+        httpLogger = logger;
+    }
+
+    /**
+     * 在默认profile的共享client上安装按host的限流熔断拦截器
+     * 传入的guard也可以直接addInterceptor到自定义client上，配合*WithClient方法使用
+     *
+     * @param hostGuard hostGuard
+     */
+    public static void globalSetHostGuard(HostGuard hostGuard) {
+        replaceInterceptor(HostGuard.class, hostGuard, false, null);
+    }
+
+    /**
+     * 替换getResultCoalesced使用的合并器，可自定义合并key
+     *
+     * @param coalescer coalescer
+     */
+    public static void globalSetRequestCoalescer(RequestCoalescer coalescer) {
+        requestCoalescer = coalescer;
+    }
+
+    public static RequestCoalescer requestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * 在默认profile的共享client上启用GET响应内存缓存，传null关闭
+     * 缓存位于其他拦截器之前，命中时不经过限流熔断
+     *
+     * @param responseCache responseCache
+     */
+    public static void globalSetResponseCache(MemoryResponseCache responseCache) {
+        replaceInterceptor(MemoryResponseCache.class, responseCache, false, Interceptor.class);
+    }
+
+    /**
+     * 在默认profile的共享client上安装分阶段耗时统计，传null移除
+     *
+     * @param metrics metrics
+     */
+    public static void globalSetMetrics(HttpMetrics metrics) {
+        CLIENT_REGISTRY.update(ClientRegistry.DEFAULT_PROFILE, builder -> builder.eventListenerFactory(metrics));
+    }
+
+    /**
+     * 在默认profile的共享client上启用请求体压缩与响应解压，传null关闭
+     * 只对某些host启用时在构造CompressionInterceptor时指定
+     *
+     * @param compression compression
+     */
+    public static void globalSetCompression(CompressionInterceptor compression) {
+        replaceInterceptor(CompressionInterceptor.class, compression, false, null);
+    }
+
+    /**
+     * 设置默认profile使用的域名解析，如DnsCache，传null恢复默认
+     *
+     * @param dns dns
+     */
+    public static void globalSetDns(Dns dns) {
+        CLIENT_REGISTRY.update(ClientRegistry.DEFAULT_PROFILE, builder -> builder.dns(dns));
+    }
+
+    /**
+     * 启动时预热默认profile：预解析域名并为每个host建立connectionsPerHost个连接放入连接池
+     * 连接池容量不足以容纳预热连接时先扩容，空闲连接超过profile的keepAliveMillis后仍会被回收
+     *
+     * @param urls               服务地址，如https://api.example.com
+     * @param connectionsPerHost 每个host预建的连接数
+     * @return 预热报告
+     */
+    public static ConnectionWarmer.WarmupReport warmUp(Collection<String> urls, int connectionsPerHost) throws InterruptedException {
+        int required = urls.size() * connectionsPerHost;
+        if (CLIENT_REGISTRY.profile(ClientRegistry.DEFAULT_PROFILE).getMaxIdleConnections() < required) {
+            CLIENT_REGISTRY.update(ClientRegistry.DEFAULT_PROFILE, builder -> builder.maxIdleConnections(required));
+        }
+        return new ConnectionWarmer(defaultClient(), connectionsPerHost).warmUp(urls);
+    }
+
+    /**
+     * 在默认profile的共享client上启用客户端负载均衡，传null关闭
+     * 位于HostGuard之前，限流熔断按实际选中的节点生效
+     *
+     * @param loadBalancer loadBalancer
+     */
+    public static void globalSetLoadBalancer(LoadBalancer loadBalancer) {
+        replaceInterceptor(LoadBalancer.class, loadBalancer, false, HostGuard.class);
+    }
+
+    /**
+     * 替换默认profile上同类型的拦截器，interceptor为null时仅移除
+     * 新拦截器插入到第一个before类型的拦截器之前，before为null或不存在时追加到末尾
+     */
+    private static void replaceInterceptor(Class<? extends Interceptor> type, Interceptor interceptor, boolean network,
+                                           Class<? extends Interceptor> before) {
+        CLIENT_REGISTRY.update(ClientRegistry.DEFAULT_PROFILE, builder -> {
+            ClientProfile current = builder.build();
+            List<Interceptor> interceptors = new ArrayList<>(network ? current.getNetworkInterceptors() : current.getInterceptors());
+            interceptors.removeIf(type::isInstance);
+            if (null != interceptor) {
+                int index = interceptors.size();
+                for (int i = 0; null != before && i < interceptors.size(); i++) {
+                    if (before.isInstance(interceptors.get(i))) {
+                        index = i;
+                        break;
+                    }
+                }
+                interceptors.add(index, interceptor);
+            }
+            return network
+                    ? builder.clearNetworkInterceptors().networkInterceptors(interceptors)
+                    : builder.clearInterceptors().interceptors(interceptors);
+        });
+    }
+
+    /**
+     * 设置共享Dispatcher的并发上限，所有由默认client派生的client共用同一个Dispatcher
+     *
+     * @param maxRequests        同时执行的异步请求上限
+     * @param maxRequestsPerHost 单个host同时执行的异步请求上限
+     */
+    public static void globalSetDispatcherLimits(int maxRequests, int maxRequestsPerHost) {
+        Dispatcher dispatcher = CLIENT.dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
     }
 
     public static byte[] getFileBytes(String url) {
-        String reqId = getRequestId();
-        log.info("==> Request getFile [{}][req_id:{}]", url, reqId);
         Request request = new Request.Builder()
                 .url(url)
-                .addHeader("Connection", "close")
                 .build();
+        CallLog callLog = startCall(request);
+        String previousReqId = putReqIdMdc(callLog.reqId);
         try (Response response = defaultClient().newCall(request).execute()) {
             ResponseBody body = response.body();
             if (body == null) {
                 return null;
             }
             byte[] bytes = body.bytes();
-            log.info("==> Response [req_id:{}] size {}", reqId, bytes.length);
+            if (callLog.sampled) {
+                httpLogger.logStreamed(callLog.reqId, bytes.length);
+            }
             return bytes;
         } catch (IOException e) {
-            log.error("==> getFileBytes [{}] error", url, e);
+            httpLogger.logError(callLog.reqId, request.url(), e);
             return null;
+        } finally {
+            restoreReqIdMdc(previousReqId);
         }
     }
 
-    private static OkHttpClient defaultClient() {
-        return getClientWithParams(CONNECT_TIMEOUT, WRITE_TIMEOUT, READ_TIMEOUT, globalConfig.proxy);
+    /**
+     * 下载到文件，不在堆上缓存文件内容，已存在的部分文件会续传
+     *
+     * @param url    链接
+     * @param target 目标文件
+     * @return 下载结果
+     */
+    public static FileDownloader.DownloadResult downloadTo(String url, Path target) throws IOException {
+        return new FileDownloader(defaultClient()).downloadTo(url, target);
+    }
+
+    /**
+     * 下载到文件，服务端支持Range且文件不小于segmentThreshold时分段并行下载
+     *
+     * @param url              链接
+     * @param target           目标文件
+     * @param segments         并行分段数
+     * @param segmentThreshold 分段下载的最小文件大小
+     * @return 下载结果
+     */
+    public static FileDownloader.DownloadResult downloadTo(String url, Path target, int segments, long segmentThreshold) throws IOException {
+        return new FileDownloader(defaultClient(), segments, segmentThreshold).downloadTo(url, target);
+    }
+
+    static OkHttpClient defaultClient() {
+        return CLIENT_REGISTRY.get(CONNECT_TIMEOUT, WRITE_TIMEOUT, READ_TIMEOUT, globalConfig.proxy);
+    }
+
+    /**
+     * 共享client注册表，可注册自定义profile以单独配置连接池
+     *
+     * @return ClientRegistry
+     */
+    public static ClientRegistry clientRegistry() {
+        return CLIENT_REGISTRY;
+    }
+
+    /**
+     * 按profile获取共享client，使用默认超时与全局代理
+     *
+     * @param profile profile名称
+     * @return OkHttpClient
+     */
+    public static OkHttpClient profileClient(String profile) {
+        return CLIENT_REGISTRY.get(profile, CONNECT_TIMEOUT, WRITE_TIMEOUT, READ_TIMEOUT, globalConfig.proxy);
     }
 
     /**
@@ -136,39 +397,207 @@ public class OkHttpUtils {
         return postMultipartWithClient(url, fileBodies, dataMap, headers, defaultClient());
     }
 
+    /**
+     * 异步get请求，基于Call.enqueue，不占用调用线程
+     * 取消返回的future会取消底层的Call
+     *
+     * @param url 请求的链接
+     * @return 响应字符串的future
+     */
+    public static CompletableFuture<String> getResultAsync(String url) {
+        return getResultWithClientAsync(url, null, defaultClient());
+    }
+
+    public static CompletableFuture<String> getResultAsync(String url, Map<String, String> headers) {
+        return getResultWithClientAsync(url, headers, defaultClient());
+    }
+
+    public static CompletableFuture<String> getResultWithClientAsync(String url, Map<String, String> headers, OkHttpClient okHttpClient) {
+        if (null == okHttpClient) {
+            okHttpClient = CLIENT;
+        }
+        return processCallAsync(okHttpClient, buildGetRequest(url, headers), null);
+    }
+
+    /**
+     * 异步json格式数据的post请求
+     *
+     * @param url  链接
+     * @param json json字符串
+     * @return 响应字符串的future
+     */
+    public static CompletableFuture<String> postJsonAsync(String url, String json) {
+        return postJsonWithClientAsync(url, json, null, defaultClient());
+    }
+
+    public static CompletableFuture<String> postJsonAsync(String url, String json, Map<String, String> headers) {
+        return postJsonWithClientAsync(url, json, headers, defaultClient());
+    }
+
+    public static CompletableFuture<String> postJsonWithClientAsync(String url, String json, Map<String, String> headers, OkHttpClient okHttpClient) {
+        if (null == okHttpClient) {
+            okHttpClient = CLIENT;
+        }
+        return processCallAsync(okHttpClient, buildBodyRequest(url, json, MEDIA_TYPE_JSON, headers), json);
+    }
+
+    /**
+     * 异步表单post请求
+     *
+     * @param url    链接
+     * @param params 参数 map
+     * @return 响应字符串的future
+     */
+    public static CompletableFuture<String> postFormAsync(String url, Map<String, String> params) {
+        return postFormWithClientAsync(url, params, null, defaultClient());
+    }
+
+    public static CompletableFuture<String> postFormAsync(String url, Map<String, String> params, Map<String, String> headers) {
+        return postFormWithClientAsync(url, params, headers, defaultClient());
+    }
+
+    public static CompletableFuture<String> postFormWithClientAsync(String url, Map<String, String> params, Map<String, String> headers, OkHttpClient okHttpClient) {
+        if (null == okHttpClient) {
+            okHttpClient = CLIENT;
+        }
+        return processCallAsync(okHttpClient, buildFormRequest(url, params, headers), null);
+    }
+
+    /**
+     * 流式get请求，响应体交给handler处理，不整体读入内存
+     *
+     * @param url     请求的链接
+     * @param handler 响应处理器
+     * @return handler的处理结果
+     */
+    public static <T> T getStream(String url, ResponseHandler<T> handler) throws IOException {
+        return getStreamWithClient(url, null, handler, defaultClient());
+    }
+
+    public static <T> T getStream(String url, Map<String, String> headers, ResponseHandler<T> handler) throws IOException {
+        return getStreamWithClient(url, headers, handler, defaultClient());
+    }
+
+    public static <T> T getStreamWithClient(String url, Map<String, String> headers, ResponseHandler<T> handler, OkHttpClient okHttpClient) throws IOException {
+        if (null == okHttpClient) {
+            okHttpClient = CLIENT;
+        }
+        return processStream(okHttpClient, buildGetRequest(url, headers), null, handler);
+    }
+
+    /**
+     * 流式json格式数据的post请求
+     *
+     * @param url     链接
+     * @param json    json字符串
+     * @param handler 响应处理器
+     * @return handler的处理结果
+     */
+    public static <T> T postJsonStream(String url, String json, ResponseHandler<T> handler) throws IOException {
+        return postJsonStreamWithClient(url, json, null, handler, defaultClient());
+    }
+
+    public static <T> T postJsonStreamWithClient(String url, String json, Map<String, String> headers, ResponseHandler<T> handler, OkHttpClient okHttpClient) throws IOException {
+        if (null == okHttpClient) {
+            okHttpClient = CLIENT;
+        }
+        return processStream(okHttpClient, buildBodyRequest(url, json, MEDIA_TYPE_JSON, headers), json, handler);
+    }
+
+    /**
+     * 批量请求，结果顺序与输入一致，单个请求失败不影响其他请求
+     *
+     * @param specs          请求描述
+     * @param maxConcurrency 全局并发上限
+     * @param maxPerHost     单个host并发上限
+     * @return 每个请求的结果
+     */
+    public static List<BatchExecutor.BatchResult> executeBatch(List<RequestSpec> specs, int maxConcurrency, int maxPerHost) throws InterruptedException {
+        return new BatchExecutor(defaultClient(), maxConcurrency, maxPerHost).execute(specs);
+    }
+
+    /**
+     * 合并相同的并发get请求，相同url与请求头的在途请求只发出一次
+     *
+     * @param url     请求的链接
+     * @param headers 请求头
+     * @return 响应字符串
+     */
+    public static String getResultCoalesced(String url, Map<String, String> headers) throws IOException {
+        return await(getResultCoalescedAsync(url, headers));
+    }
+
+    public static String getResultCoalesced(String url) throws IOException {
+        return getResultCoalesced(url, null);
+    }
+
+    public static CompletableFuture<String> getResultCoalescedAsync(String url, Map<String, String> headers) {
+        try {
+            return requestCoalescer.execute(defaultClient(), buildGetRequest(url, headers));
+        } finally {
+            // 合并到在途请求的调用方不会经过startCall，日志开关需在这里清除
+            takeReqContext();
+        }
+    }
+
+    /**
+     * 带对冲与重试的get请求，仅适用于幂等请求
+     *
+     * @param url     请求的链接
+     * @param headers 请求头
+     * @param policy  对冲策略，应在同类请求间共享
+     * @return 响应字符串
+     */
+    public static String getResultHedged(String url, Map<String, String> headers, HedgePolicy policy) throws IOException {
+        return await(getResultHedgedAsync(url, headers, policy));
+    }
+
+    public static CompletableFuture<String> getResultHedgedAsync(String url, Map<String, String> headers, HedgePolicy policy) {
+        return policy.execute(defaultClient(), buildGetRequest(url, headers));
+    }
+
     public static String postMultipartWithClient(String url, List<FileBody> fileBodies, Map<String, String> dataMap, Map<String, String> headers, OkHttpClient okHttpClient) throws IOException {
         MultipartBody.Builder builder = new MultipartBody.Builder();
         builder.setType(MultipartBody.FORM);
-        StringBuilder sb = new StringBuilder();
         if (null != fileBodies) {
             for (FileBody fileBody : fileBodies) {
-                RequestBody requestBody = RequestBody.create(fileBody.fileBytes, MediaType.parse(fileBody.getMediaType()));
-                builder.addFormDataPart(fileBody.name, fileBody.fileName, requestBody);
-                sb.append("[file]").append(fileBody.name).append(":").append(fileBody.fileName).append(",");
+                builder.addFormDataPart(fileBody.name, fileBody.fileName, fileBody.toRequestBody());
             }
         }
         if (null != dataMap) {
             for (Map.Entry<String, String> entry : dataMap.entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                if (null != value) {
-                    builder.addFormDataPart(key, value);
-                    sb.append(key).append("=").append(value).append(",");
+                if (null != entry.getValue()) {
+                    builder.addFormDataPart(entry.getKey(), entry.getValue());
                 }
             }
         }
         Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
                 .post(builder.build());
-        if (null != headers) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                requestBuilder.header(entry.getKey(), entry.getValue());
-            }
-        }
+        applyHeaders(requestBuilder, headers);
         if (null == okHttpClient) {
             okHttpClient = CLIENT;
         }
-        return processCall(okHttpClient, requestBuilder.build(), sb.toString());
+        Request request = requestBuilder.build();
+        // 日志文本只在采样命中时拼接
+        return processLoggedCall(okHttpClient, request, startCall(request, () -> multipartLogText(fileBodies, dataMap)));
+    }
+
+    private static String multipartLogText(List<FileBody> fileBodies, Map<String, String> dataMap) {
+        StringBuilder sb = new StringBuilder();
+        if (null != fileBodies) {
+            for (FileBody fileBody : fileBodies) {
+                sb.append("[file]").append(fileBody.name).append(":").append(fileBody.fileName).append(",");
+            }
+        }
+        if (null != dataMap) {
+            for (Map.Entry<String, String> entry : dataMap.entrySet()) {
+                if (null != entry.getValue()) {
+                    sb.append(entry.getKey()).append("=").append(entry.getValue()).append(",");
+                }
+            }
+        }
+        return sb.toString();
     }
 
     /**
@@ -178,17 +607,10 @@ public class OkHttpUtils {
      * @return 响应字符串
      */
     public static String getResultWithClient(String url, Map<String, String> headers, OkHttpClient okHttpClient) throws IOException {
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(url);
-        if (null != headers) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                requestBuilder.header(entry.getKey(), entry.getValue());
-            }
-        }
         if (null == okHttpClient) {
             okHttpClient = CLIENT;
         }
-        return processCall(okHttpClient, requestBuilder.build(), null);
+        return processCall(okHttpClient, buildGetRequest(url, headers), null);
     }
 
     public static String getResultWithClient(String url, OkHttpClient okHttpClient) throws IOException {
@@ -203,29 +625,10 @@ public class OkHttpUtils {
      * @return 响应字符串
      */
     public static String postFormWithClient(String url, Map<String, String> params, Map<String, String> headers, OkHttpClient okHttpClient) throws IOException {
-        FormBody.Builder builder = new FormBody.Builder();
-        StringBuilder sb = new StringBuilder();
-        if (null != params) {
-            for (Map.Entry<String, String> entry : params.entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue() == null ? "" : entry.getValue();
-                builder.add(key, value);
-                sb.append(key).append("=").append(value).append(",");
-            }
-        }
-        RequestBody body = builder.build();
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(url)
-                .post(body);
-        if (null != headers) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                requestBuilder.header(entry.getKey(), entry.getValue());
-            }
-        }
         if (null == okHttpClient) {
             okHttpClient = CLIENT;
         }
-        return processCall(okHttpClient, requestBuilder.build(), sb.toString());
+        return processCall(okHttpClient, buildFormRequest(url, params, headers), null);
     }
 
     public static String postFormWithClient(String url, Map<String, String> params, OkHttpClient okHttpClient) throws IOException {
@@ -266,55 +669,234 @@ public class OkHttpUtils {
         if (null == okHttpClient) {
             okHttpClient = CLIENT;
         }
+        return processCall(okHttpClient, buildBodyRequest(url, body, mediaType, headers), body);
+    }
+
+    static Request buildGetRequest(String url, Map<String, String> headers) {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url);
+        applyHeaders(requestBuilder, headers);
+        return requestBuilder.build();
+    }
+
+    static Request buildBodyRequest(String url, String body, MediaType mediaType, Map<String, String> headers) {
         RequestBody requestBody = RequestBody.create(body, mediaType);
         Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
                 .post(requestBody);
+        applyHeaders(requestBuilder, headers);
+        return requestBuilder.build();
+    }
+
+    static Request buildFormRequest(String url, Map<String, String> params, Map<String, String> headers) {
+        FormBody.Builder builder = new FormBody.Builder();
+        if (null != params) {
+            for (Map.Entry<String, String> entry : params.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue() == null ? "" : entry.getValue();
+                builder.add(key, value);
+            }
+        }
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .post(builder.build());
+        applyHeaders(requestBuilder, headers);
+        return requestBuilder.build();
+    }
+
+    /**
+     * 阻塞等待异步结果，还原IOException
+     */
+    private static String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static void applyHeaders(Request.Builder requestBuilder, Map<String, String> headers) {
         if (null != headers) {
             for (Map.Entry<String, String> entry : headers.entrySet()) {
                 requestBuilder.header(entry.getKey(), entry.getValue());
             }
         }
-        return processCall(okHttpClient, requestBuilder.build(), body);
     }
 
     private static String processCall(OkHttpClient client, Request request, String bodyStr) throws IOException {
-        boolean logResult = REQ_CONTEXT_PROVIDER.get().isLogResult();
-        boolean logRequestParam = REQ_CONTEXT_PROVIDER.get().isLogRequestParam();
-        String reqId = getRequestId();
-        HttpUrl url = request.url();
-        String method = request.method();
-        if (logRequestParam) {
-            log.info("==> Request [{}] to [{}][{}],body:{}", method, url, reqId, "POST".equals(method) ? "\n" + bodyStr : "");
-        } else {
-            log.info("==> Request [{}] to [{}][{}]", method, url, reqId);
+        return processLoggedCall(client, request, startCall(request, bodyStr));
+    }
+
+    private static String processLoggedCall(OkHttpClient client, Request request, CallLog callLog) throws IOException {
+        String previousReqId = putReqIdMdc(callLog.reqId);
+        try (Response response = client.newCall(request).execute()) {
+            return readResponse(response, callLog);
+        } catch (IOException e) {
+            httpLogger.logError(callLog.reqId, request.url(), e);
+            throw e;
+        } finally {
+            restoreReqIdMdc(previousReqId);
         }
+    }
+
+    private static <T> T processStream(OkHttpClient client, Request request, String bodyStr, ResponseHandler<T> handler) throws IOException {
+        CallLog callLog = startCall(request, bodyStr);
+        String previousReqId = putReqIdMdc(callLog.reqId);
         try (Response response = client.newCall(request).execute()) {
-            String errorPrefix = "Unexpected code ";
             if (!response.isSuccessful()) {
-                throw new IOException(errorPrefix + response);
+                throw new IOException("Unexpected code " + response);
             }
             ResponseBody body = response.body();
             if (body == null) {
-                return "";
+                body = ResponseBody.create(new byte[0], null);
             }
-            String resp = body.string();
-            if (logResult) {
-                log.info("==> Response [{}] is {}", reqId, resp);
-            } else {
-                log.info("==> Response [{}] size {}", reqId, resp.length());
+            T result = handler.handle(body);
+            if (callLog.sampled) {
+                httpLogger.logStreamed(callLog.reqId, body.contentLength());
             }
-            return resp;
+            return result;
         } catch (IOException e) {
-            log.error("==> Error when process [{}][{}],msg:{}", url, reqId, e.getMessage());
+            httpLogger.logError(callLog.reqId, request.url(), e);
             throw e;
         } finally {
-            REQ_CONTEXT_PROVIDER.get().setLogResult(true);
+            restoreReqIdMdc(previousReqId);
+        }
+    }
+
+    /**
+     * 异步执行，响应在Dispatcher线程中读取
+     * future被取消时同步取消Call
+     */
+    static CompletableFuture<String> processCallAsync(OkHttpClient client, Request request, String bodyStr) {
+        return processLoggedCallAsync(client, request, startCall(request, bodyStr));
+    }
+
+    private static CompletableFuture<String> processLoggedCallAsync(OkHttpClient client, Request request, CallLog callLog) {
+        HttpUrl url = request.url();
+        Call call = client.newCall(request);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.whenComplete((resp, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                httpLogger.logError(callLog.reqId, url, e);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                String previousReqId = putReqIdMdc(callLog.reqId);
+                try (Response r = response) {
+                    future.complete(readResponse(r, callLog));
+                } catch (IOException e) {
+                    httpLogger.logError(callLog.reqId, url, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    restoreReqIdMdc(previousReqId);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 把请求id放入MDC
+     *
+     * @return 调用方原有的请求id，如上游过滤器放入的追踪id，在finally中交给restoreReqIdMdc恢复
+     */
+    private static String putReqIdMdc(String reqId) {
+        String previous = MDC.get(RequestIds.MDC_KEY);
+        MDC.put(RequestIds.MDC_KEY, reqId);
+        return previous;
+    }
+
+    private static void restoreReqIdMdc(String previous) {
+        if (null == previous) {
+            MDC.remove(RequestIds.MDC_KEY);
+        } else {
+            MDC.put(RequestIds.MDC_KEY, previous);
+        }
+    }
+
+    static CallLog startCall(Request request) {
+        return startCall(request, (Supplier<String>) null);
+    }
+
+    static CallLog startCall(Request request, String bodyStr) {
+        return startCall(request, null == bodyStr ? null : () -> bodyStr);
+    }
+
+    /**
+     * 分配请求id，消费当前线程的日志开关，并按采样结果记录请求
+     *
+     * @param bodyText 请求体日志文本，只在采样命中且需要记录请求体时调用
+     */
+    static CallLog startCall(Request request, Supplier<String> bodyText) {
+        ReqContext context = takeReqContext();
+        boolean logRequestParam = true;
+        boolean logResult = true;
+        if (null != context) {
+            logRequestParam = context.isLogRequestParam();
+            logResult = context.isLogResult();
+        }
+        HttpLogger logger = httpLogger;
+        CallLog callLog = new CallLog(RequestIds.next(), logger.sample(), logResult);
+        if (callLog.sampled) {
+            logger.logRequest(callLog.reqId, request, logRequestParam && null != bodyText ? bodyText.get() : null, logRequestParam);
+        }
+        return callLog;
+    }
+
+    static String readResponse(Response response, CallLog callLog) throws IOException {
+        String errorPrefix = "Unexpected code ";
+        if (!response.isSuccessful()) {
+            throw new IOException(errorPrefix + response);
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            return "";
+        }
+        String resp = body.string();
+        if (callLog.sampled) {
+            httpLogger.logResponse(callLog.reqId, resp, callLog.logResult);
+        }
+        return resp;
+    }
+
+    static void logError(CallLog callLog, HttpUrl url, Exception e) {
+        httpLogger.logError(callLog.reqId, url, e);
+    }
+
+    /**
+     * 单次请求的日志状态
+     */
+    static final class CallLog {
+
+        final String reqId;
+
+        final boolean sampled;
+
+        final boolean logResult;
+
+        CallLog(String reqId, boolean sampled, boolean logResult) {
+            this.reqId = reqId;
+            this.sampled = sampled;
+            this.logResult = logResult;
         }
     }
 
     /**
      * set timeout  in millis
+     * 返回注册表中缓存的共享client
      *
      * @param connTimeout  connTimeout
      * @param writeTimeout writeTimeout
@@ -323,14 +905,7 @@ public class OkHttpUtils {
      * @return OkHttpClient
      */
     public static OkHttpClient getClientWithParams(long connTimeout, long writeTimeout, long readTimeout, Proxy proxy) {
-        OkHttpClient.Builder builder = CLIENT.newBuilder();
-        builder.connectTimeout(connTimeout, TimeUnit.MILLISECONDS);
-        builder.writeTimeout(writeTimeout, TimeUnit.MILLISECONDS);
-        builder.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
-        if (null != proxy) {
-            builder.proxy(proxy);
-        }
-        return builder.build();
+        return CLIENT_REGISTRY.get(connTimeout, writeTimeout, readTimeout, proxy);
     }
 
     /**
@@ -340,33 +915,34 @@ public class OkHttpUtils {
      * @return OkHttpClient
      */
     public static OkHttpClient oneMinuteTimeoutClient(Proxy proxy) {
-        OkHttpClient.Builder builder = CLIENT.newBuilder();
-        builder.connectTimeout(1, TimeUnit.MINUTES);
-        builder.writeTimeout(1, TimeUnit.MINUTES);
-        builder.readTimeout(1, TimeUnit.MINUTES);
-        if (null != proxy) {
-            builder.proxy(proxy);
-        }
-        return builder.build();
+        long oneMinute = TimeUnit.MINUTES.toMillis(1);
+        return CLIENT_REGISTRY.get(oneMinute, oneMinute, oneMinute, proxy);
     }
 
     public static InputStream downLoadFile(String fileUrl, Proxy proxy) throws IOException {
         final Request request = new Request.Builder().url(fileUrl).build();
         final Call call = getClientWithParams(CONNECT_TIMEOUT, WRITE_TIMEOUT, READ_TIMEOUT, proxy).newCall(request);
         Response response = call.execute();
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("Unexpected code " + response);
+        }
+        // 关闭返回的流即关闭Response并归还连接
         return Optional.of(response)
                 .map(Response::body)
                 .map(ResponseBody::byteStream)
-                .orElseThrow(() -> new RuntimeException("InputStream is null"));
-    }
-
-    private static String getRequestId() {
-        return "" + System.currentTimeMillis();
+                .orElseThrow(() -> {
+                    response.close();
+                    return new RuntimeException("InputStream is null");
+                });
     }
 
+    /**
+     * 上传文件，内容来源三选一：fileBytes，filePath，streamSupplier
+     * 后两者流式写出，不把文件读入堆
+     */
     @Getter
     @Setter
-    @AllArgsConstructor
     @NoArgsConstructor
     public static class FileBody {
 
@@ -383,6 +959,85 @@ public class OkHttpUtils {
 
         private String mediaType;
 
+        /**
+         * 从文件流式上传
+         */
+        private Path filePath;
+
+        /**
+         * 从输入流流式上传，每次写出请求体时调用一次，流在写完后关闭
+         */
+        private Supplier<InputStream> streamSupplier;
+
+        /**
+         * streamSupplier的内容长度，未知时为-1，按chunked发送
+         */
+        private long contentLength = -1;
+
+        private UploadProgressListener progressListener;
+
+        public FileBody(String name, byte[] fileBytes, String fileName, boolean mediaTypeFileNameDetect, String mediaType) {
+            this.name = name;
+            this.fileBytes = fileBytes;
+            this.fileName = fileName;
+            this.mediaTypeFileNameDetect = mediaTypeFileNameDetect;
+            this.mediaType = mediaType;
+        }
+
+        /**
+         * 文件名取自path，按文件名后缀识别mediaType
+         *
+         * @param name     表单字段名
+         * @param filePath 文件
+         * @return FileBody
+         */
+        public static FileBody ofPath(String name, Path filePath) {
+            FileBody fileBody = new FileBody();
+            fileBody.name = name;
+            fileBody.filePath = filePath;
+            fileBody.fileName = filePath.getFileName().toString();
+            fileBody.mediaTypeFileNameDetect = true;
+            return fileBody;
+        }
+
+        /**
+         * @param name           表单字段名
+         * @param fileName       文件名
+         * @param streamSupplier 输入流提供者
+         * @param contentLength  内容长度，未知时传-1
+         * @param mediaType      mediaType
+         * @return FileBody
+         */
+        public static FileBody ofStream(String name, String fileName, Supplier<InputStream> streamSupplier, long contentLength, String mediaType) {
+            FileBody fileBody = new FileBody();
+            fileBody.name = name;
+            fileBody.fileName = fileName;
+            fileBody.streamSupplier = streamSupplier;
+            fileBody.contentLength = contentLength;
+            fileBody.mediaType = mediaType;
+            return fileBody;
+        }
+
+        public FileBody withProgressListener(UploadProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        RequestBody toRequestBody() throws IOException {
+            MediaType contentType = MediaType.parse(getMediaType());
+            if (null != filePath) {
+                return StreamingRequestBody.ofPath(filePath, Files.size(filePath), contentType, progressListener);
+            }
+            if (null != streamSupplier) {
+                return StreamingRequestBody.ofStream(streamSupplier, contentLength, contentType, progressListener);
+            }
+            if (null != progressListener) {
+                byte[] bytes = fileBytes;
+                return StreamingRequestBody.ofStream(() -> new ByteArrayInputStream(bytes), bytes.length, contentType, progressListener);
+            }
+            return RequestBody.create(fileBytes, contentType);
+        }
+
         public String getMediaType() {
             String defaultMediaType = "application/octet-stream";
             if (mediaTypeFileNameDetect) {
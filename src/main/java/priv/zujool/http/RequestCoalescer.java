@@ -0,0 +1,127 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 相同GET请求的合并(single-flight)
+ * 同一key的请求在途时，后来者不再发起新的Call，而是共享在途请求的结果或异常
+ * 每个调用方拿到的是独立的future，取消它不会影响其他调用方
+ *
+ * @author zujool
+ **/
+public class RequestCoalescer {
+
+    private final Function<Request, String> keyFunction;
+
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 以url加全部请求头作为key
+     */
+    public RequestCoalescer() {
+        this(RequestCoalescer::allHeadersKey);
+    }
+
+    public RequestCoalescer(Function<Request, String> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * 以url加指定请求头作为key，其余请求头不影响合并
+     *
+     * @param headerNames 参与key计算的请求头
+     * @return keyFunction
+     */
+    public static Function<Request, String> headersKey(String... headerNames) {
+        return request -> {
+            StringBuilder sb = new StringBuilder(request.url().toString());
+            for (String name : headerNames) {
+                String value = request.header(name);
+                if (null != value) {
+                    sb.append('\n').append(name.toLowerCase(Locale.ROOT)).append(':').append(value);
+                }
+            }
+            return sb.toString();
+        };
+    }
+
+    private static String allHeadersKey(Request request) {
+        StringBuilder sb = new StringBuilder(request.url().toString());
+        Headers headers = request.headers();
+        for (String name : new TreeSet<>(headers.names())) {
+            sb.append('\n').append(name).append(':').append(headers.values(name));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 执行或加入在途的相同请求，只接受GET
+     *
+     * @param client  client
+     * @param request GET请求
+     * @return 响应字符串的future
+     */
+    public CompletableFuture<String> execute(OkHttpClient client, Request request) {
+        if (!"GET".equals(request.method())) {
+            throw new IllegalArgumentException("only GET requests can be coalesced, got " + request.method());
+        }
+        calls.increment();
+        String key = keyFunction.apply(request);
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, leader);
+        if (null != existing) {
+            coalesced.increment();
+            return existing.thenApply(Function.identity());
+        }
+        OkHttpUtils.processCallAsync(client, request, null).whenComplete((body, e) -> {
+            inFlight.remove(key, leader);
+            if (null != e) {
+                leader.completeExceptionally(e);
+            } else {
+                leader.complete(body);
+            }
+        });
+        return leader.thenApply(Function.identity());
+    }
+
+    public Stats stats() {
+        return new Stats(calls.sum(), coalesced.sum(), inFlight.size());
+    }
+
+    @Getter
+    @ToString
+    public static class Stats {
+
+        private final long calls;
+
+        /**
+         * 被合并而未发出请求的次数
+         */
+        private final long coalesced;
+
+        private final int inFlight;
+
+        Stats(long calls, long coalesced, int inFlight) {
+            this.calls = calls;
+            this.coalesced = coalesced;
+            this.inFlight = inFlight;
+        }
+    }
+
+}
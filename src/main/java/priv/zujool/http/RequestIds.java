@@ -0,0 +1,30 @@
+package priv.zujool.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求id生成
+ * 进程级随机前缀加单调递增序号，同一进程内不重复，生成只需一次CAS
+ *
+ * @author zujool
+ **/
+public class RequestIds {
+
+    /**
+     * MDC中的请求id键
+     */
+    public static final String MDC_KEY = "reqId";
+
+    private static final String PREFIX = Long.toString(ThreadLocalRandom.current().nextLong(36L * 36 * 36 * 36 * 36, 36L * 36 * 36 * 36 * 36 * 36), 36);
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private RequestIds() {
+    }
+
+    public static String next() {
+        return PREFIX + "-" + Long.toString(SEQUENCE.incrementAndGet(), 36);
+    }
+
+}
@@ -0,0 +1,70 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.MediaType;
+import okhttp3.Request;
+
+import java.util.Map;
+
+/**
+ * 批量请求中的单个请求描述，与postFormWithClient/postJsonWithClient的参数形式一致
+ *
+ * @author zujool
+ **/
+@Getter
+@ToString
+public class RequestSpec {
+
+    private final String url;
+
+    private final String method;
+
+    private final String body;
+
+    private final MediaType mediaType;
+
+    private final Map<String, String> formParams;
+
+    private final Map<String, String> headers;
+
+    private RequestSpec(String url, String method, String body, MediaType mediaType, Map<String, String> formParams, Map<String, String> headers) {
+        this.url = url;
+        this.method = method;
+        this.body = body;
+        this.mediaType = mediaType;
+        this.formParams = formParams;
+        this.headers = headers;
+    }
+
+    public static RequestSpec get(String url) {
+        return get(url, null);
+    }
+
+    public static RequestSpec get(String url, Map<String, String> headers) {
+        return new RequestSpec(url, "GET", null, null, null, headers);
+    }
+
+    public static RequestSpec json(String url, String json, Map<String, String> headers) {
+        return new RequestSpec(url, "POST", json, OkHttpUtils.MEDIA_TYPE_JSON, null, headers);
+    }
+
+    public static RequestSpec xml(String url, String xml, Map<String, String> headers) {
+        return new RequestSpec(url, "POST", xml, OkHttpUtils.MEDIA_TYPE_XML, null, headers);
+    }
+
+    public static RequestSpec form(String url, Map<String, String> params, Map<String, String> headers) {
+        return new RequestSpec(url, "POST", null, null, params, headers);
+    }
+
+    Request toRequest() {
+        if ("GET".equals(method)) {
+            return OkHttpUtils.buildGetRequest(url, headers);
+        }
+        if (null != mediaType) {
+            return OkHttpUtils.buildBodyRequest(url, body, mediaType, headers);
+        }
+        return OkHttpUtils.buildFormRequest(url, formParams, headers);
+    }
+
+}
@@ -0,0 +1,26 @@
+package priv.zujool.http;
+
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+
+/**
+ * 流式响应处理器，直接消费ResponseBody的source，不把整个响应读入内存
+ * 调用方负责在handle返回后关闭Response
+ *
+ * @param <T> 处理结果类型
+ * @author zujool
+ **/
+@FunctionalInterface
+public interface ResponseHandler<T> {
+
+    /**
+     * 处理响应体
+     *
+     * @param body 响应体，不为null
+     * @return 处理结果
+     * @throws IOException 读取异常
+     */
+    T handle(ResponseBody body) throws IOException;
+
+}
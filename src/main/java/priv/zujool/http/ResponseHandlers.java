@@ -0,0 +1,150 @@
+package priv.zujool.http;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * 常用的流式响应处理器
+ *
+ * @author zujool
+ **/
+public class ResponseHandlers {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private ResponseHandlers() {
+    }
+
+    /**
+     * 按行(UTF-8)回调，返回行数
+     *
+     * @param consumer 行消费者
+     * @return handler
+     */
+    public static ResponseHandler<Long> lines(Consumer<String> consumer) {
+        return body -> {
+            BufferedSource source = body.source();
+            long count = 0;
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                consumer.accept(line);
+                count++;
+            }
+            return count;
+        };
+    }
+
+    public static ResponseHandler<Long> chunks(Consumer<ByteBuffer> consumer) {
+        return chunks(consumer, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * 按块回调，返回总字节数
+     * 回调中的ByteBuffer会被复用，消费者不能在回调返回后继续持有
+     *
+     * @param consumer  块消费者，buffer已flip，可直接读取
+     * @param chunkSize 块大小
+     * @return handler
+     */
+    public static ResponseHandler<Long> chunks(Consumer<ByteBuffer> consumer, int chunkSize) {
+        return body -> {
+            BufferedSource source = body.source();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(chunkSize);
+            long total = 0;
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                if (read == 0) {
+                    continue;
+                }
+                total += read;
+                buffer.flip();
+                consumer.accept(buffer);
+                buffer.clear();
+            }
+            return total;
+        };
+    }
+
+    /**
+     * 解析text/event-stream，每个完整事件回调一次，返回事件数
+     *
+     * @param consumer 事件消费者
+     * @return handler
+     */
+    public static ResponseHandler<Long> serverSentEvents(Consumer<ServerSentEvent> consumer) {
+        return body -> {
+            BufferedSource source = body.source();
+            long count = 0;
+            String id = null;
+            String event = null;
+            long retry = -1;
+            StringBuilder data = null;
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.isEmpty()) {
+                    if (null != data) {
+                        consumer.accept(new ServerSentEvent(id, null == event ? "message" : event, data.toString(), retry));
+                        count++;
+                    }
+                    event = null;
+                    retry = -1;
+                    data = null;
+                    continue;
+                }
+                if (line.charAt(0) == ':') {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                String field = colon < 0 ? line : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(colon + 1);
+                if (value.startsWith(" ")) {
+                    value = value.substring(1);
+                }
+                switch (field) {
+                    case "data":
+                        if (null == data) {
+                            data = new StringBuilder(value);
+                        } else {
+                            data.append('\n').append(value);
+                        }
+                        break;
+                    case "event":
+                        event = value;
+                        break;
+                    case "id":
+                        id = value;
+                        break;
+                    case "retry":
+                        try {
+                            retry = Long.parseLong(value);
+                        } catch (NumberFormatException ignored) {
+                            // 按规范忽略非法的retry
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return count;
+        };
+    }
+
+    /**
+     * 写入输出流，返回写入字节数，不关闭输出流
+     *
+     * @param out 输出流
+     * @return handler
+     */
+    public static ResponseHandler<Long> toOutputStream(OutputStream out) {
+        return body -> {
+            long total = body.source().readAll(Okio.sink(out));
+            out.flush();
+            return total;
+        };
+    }
+
+}
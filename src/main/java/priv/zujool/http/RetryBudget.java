@@ -0,0 +1,55 @@
+package priv.zujool.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶重试预算
+ * 每个首次请求存入depositRatio个令牌，每次重试取出一个令牌，桶空时拒绝重试
+ * 重试量因此被限制在请求量的depositRatio倍以内，避免下游故障时被重试放大
+ *
+ * @author zujool
+ **/
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+
+    private final long maxTokens;
+
+    private final AtomicLong tokens;
+
+    /**
+     * @param depositRatio 每个请求存入的令牌数，如0.1表示重试不超过请求量的10%
+     * @param maxTokens    桶容量，同时也是初始令牌数，允许启动时的少量重试
+     */
+    public RetryBudget(double depositRatio, int maxTokens) {
+        if (depositRatio < 0 || maxTokens < 0) {
+            throw new IllegalArgumentException("retry budget must not be negative");
+        }
+        this.deposit = (long) (depositRatio * SCALE);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    void deposit() {
+        tokens.accumulateAndGet(deposit, (current, d) -> Math.min(maxTokens, current + d));
+    }
+
+    boolean tryWithdraw() {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double available() {
+        return (double) tokens.get() / SCALE;
+    }
+
+}
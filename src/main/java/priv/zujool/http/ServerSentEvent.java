@@ -0,0 +1,38 @@
+package priv.zujool.http;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * text/event-stream 中的一条事件
+ *
+ * @author zujool
+ **/
+@Getter
+@ToString
+public class ServerSentEvent {
+
+    private final String id;
+
+    /**
+     * 事件类型，未指定时为 message
+     */
+    private final String event;
+
+    /**
+     * 多行data以\n拼接
+     */
+    private final String data;
+
+    /**
+     * 服务端建议的重连间隔，未指定时为-1
+     */
+    private final long retry;
+
+    ServerSentEvent(String id, String event, String data, long retry) {
+        this.id = id;
+        this.event = event;
+        this.data = data;
+        this.retry = retry;
+    }
+}
@@ -0,0 +1,98 @@
+package priv.zujool.http;
+
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 默认的slf4j日志实现，日志名沿用OkHttpUtils
+ * 支持按比例采样与请求/响应体长度截断，INFO关闭时不做任何格式化
+ *
+ * @author zujool
+ **/
+public class Slf4jHttpLogger implements HttpLogger {
+
+    private static final Logger log = LoggerFactory.getLogger(OkHttpUtils.class);
+
+    private final double sampleRate;
+
+    private final int maxBodyLength;
+
+    public Slf4jHttpLogger() {
+        this(1.0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param sampleRate    采样比例，0~1
+     * @param maxBodyLength 请求/响应体最多记录的字符数
+     */
+    public Slf4jHttpLogger(double sampleRate, int maxBodyLength) {
+        this.sampleRate = sampleRate;
+        this.maxBodyLength = maxBodyLength;
+    }
+
+    @Override
+    public boolean sample() {
+        if (!log.isInfoEnabled()) {
+            return false;
+        }
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    @Override
+    public void logRequest(String reqId, Request request, String body, boolean logBody) {
+        HttpUrl url = request.url();
+        String method = request.method();
+        if (logBody && "POST".equals(method)) {
+            log.info("==> Request [{}] to [{}][{}],body:\n{}", method, url, reqId, abbreviate(null == body ? formBody(request) : body));
+        } else {
+            log.info("==> Request [{}] to [{}][{}]", method, url, reqId);
+        }
+    }
+
+    @Override
+    public void logResponse(String reqId, String body, boolean logBody) {
+        if (logBody) {
+            log.info("==> Response [{}] is {}", reqId, abbreviate(body));
+        } else {
+            log.info("==> Response [{}] size {}", reqId, body.length());
+        }
+    }
+
+    @Override
+    public void logStreamed(String reqId, long contentLength) {
+        log.info("==> Response [{}] streamed, content-length {}", reqId, contentLength);
+    }
+
+    @Override
+    public void logError(String reqId, HttpUrl url, Exception e) {
+        log.error("==> Error when process [{}][{}],msg:{}", url, reqId, e.getMessage());
+    }
+
+    private String abbreviate(String text) {
+        if (null == text || text.length() <= maxBodyLength) {
+            return text;
+        }
+        return text.substring(0, maxBodyLength) + "...(" + text.length() + " chars)";
+    }
+
+    /**
+     * 表单请求体只在需要记录时才格式化
+     */
+    private static String formBody(Request request) {
+        if (!(request.body() instanceof FormBody)) {
+            return null;
+        }
+        FormBody formBody = (FormBody) request.body();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < formBody.size(); i++) {
+            sb.append(formBody.name(i)).append("=").append(formBody.value(i)).append(",");
+        }
+        return sb.toString();
+    }
+
+}
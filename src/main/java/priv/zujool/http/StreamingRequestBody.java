@@ -0,0 +1,108 @@
+package priv.zujool.http;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+/**
+ * 从文件或输入流按块写出的请求体，内存占用与文件大小无关
+ * writeTo可能因重试被多次调用，每次都会重新打开文件或重新获取输入流
+ *
+ * @author zujool
+ **/
+class StreamingRequestBody extends RequestBody {
+
+    private static final long CHUNK = 64 * 1024;
+
+    private final MediaType contentType;
+
+    private final Path path;
+
+    private final Supplier<InputStream> streamSupplier;
+
+    private final long contentLength;
+
+    private final UploadProgressListener listener;
+
+    private StreamingRequestBody(MediaType contentType, Path path, Supplier<InputStream> streamSupplier, long contentLength, UploadProgressListener listener) {
+        this.contentType = contentType;
+        this.path = path;
+        this.streamSupplier = streamSupplier;
+        this.contentLength = contentLength;
+        this.listener = listener;
+    }
+
+    static StreamingRequestBody ofPath(Path path, long contentLength, MediaType contentType, UploadProgressListener listener) {
+        return new StreamingRequestBody(contentType, path, null, contentLength, listener);
+    }
+
+    static StreamingRequestBody ofStream(Supplier<InputStream> streamSupplier, long contentLength, MediaType contentType, UploadProgressListener listener) {
+        return new StreamingRequestBody(contentType, null, streamSupplier, contentLength, listener);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (null != path) {
+            writeFile(sink);
+        } else {
+            writeStream(sink);
+        }
+    }
+
+    private void writeFile(BufferedSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long n = channel.transferTo(position, Math.min(CHUNK, size - position), sink);
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+                progress(position);
+            }
+        }
+    }
+
+    private void writeStream(BufferedSink sink) throws IOException {
+        InputStream in = streamSupplier.get();
+        if (null == in) {
+            throw new IOException("upload stream supplier returned null");
+        }
+        try (Source source = Okio.source(in)) {
+            long written = 0;
+            long n;
+            while ((n = source.read(sink.getBuffer(), CHUNK)) != -1) {
+                sink.emitCompleteSegments();
+                written += n;
+                progress(written);
+            }
+        }
+    }
+
+    private void progress(long written) {
+        if (null != listener) {
+            listener.onProgress(written, contentLength);
+        }
+    }
+
+}
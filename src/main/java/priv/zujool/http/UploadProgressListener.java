@@ -0,0 +1,17 @@
+package priv.zujool.http;
+
+/**
+ * 上传进度回调，在写出请求体的线程中调用，不应阻塞
+ *
+ * @author zujool
+ **/
+@FunctionalInterface
+public interface UploadProgressListener {
+
+    /**
+     * @param bytesWritten  已写出的字节数
+     * @param contentLength 总长度，未知时为-1
+     */
+    void onProgress(long bytesWritten, long contentLength);
+
+}
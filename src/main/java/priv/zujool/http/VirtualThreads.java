@@ -0,0 +1,34 @@
+package priv.zujool.http;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程支持
+ * 这是JDK 8的实现，始终不支持；JDK 21+运行时由multi-release jar中META-INF/versions/21下的实现替换
+ *
+ * @author zujool
+ **/
+public class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return false;
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        return false;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器
+     *
+     * @param namePrefix 线程名前缀
+     * @return 执行器
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("virtual threads require JDK 21+");
+    }
+
+}